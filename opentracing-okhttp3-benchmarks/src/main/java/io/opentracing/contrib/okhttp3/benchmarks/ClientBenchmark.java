@@ -0,0 +1,207 @@
+package io.opentracing.contrib.okhttp3.benchmarks;
+
+import io.opentracing.Tracer;
+import io.opentracing.contrib.okhttp3.TracingCallFactory;
+import io.opentracing.contrib.okhttp3.TracingInterceptor;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.noop.NoopTracerFactory;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.net.ServerSocketFactory;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures per-call overhead of the instrumentation against a local {@link MockWebServer}.
+ *
+ * <p>Run {@code java -jar target/benchmarks.jar -prof gc} to report allocation rate ({@code gc.alloc.rate.norm}
+ * is bytes/op) next to throughput and sampled latency. The {@code tracer} parameter has no effect
+ * on the {@code bare} client.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientBenchmark {
+    /**
+     * Strong reference, MockWebServer logs every request at INFO level.
+     */
+    private static final Logger mockWebServerLogger = Logger.getLogger(MockWebServer.class.getName());
+
+    @Param({"bare", "callFactory", "sharedCallFactory", "interceptor"})
+    public String instrumentation;
+
+    @Param({"noop", "mock", "recording"})
+    public String tracer;
+
+    private MockWebServer mockWebServer;
+    private Tracer benchmarkTracer;
+    private OkHttpClient okHttpClient;
+    private Call.Factory client;
+    private Request request;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mockWebServerLogger.setLevel(java.util.logging.Level.WARNING);
+        mockWebServer = new MockWebServer();
+        mockWebServer.setServerSocketFactory(new NoDelayServerSocketFactory());
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest recordedRequest) {
+                return new MockResponse().setResponseCode(200).setBody("ok");
+            }
+        });
+        mockWebServer.start();
+        request = new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build();
+
+        benchmarkTracer = createTracer(tracer);
+        okHttpClient = new OkHttpClient();
+        client = createClient(instrumentation, okHttpClient, benchmarkTracer);
+    }
+
+    @TearDown(Level.Iteration)
+    public void resetTracer() {
+        if (benchmarkTracer instanceof MockTracer) {
+            ((MockTracer) benchmarkTracer).reset();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (client instanceof OkHttpClient) {
+            ((OkHttpClient) client).dispatcher().executorService().shutdown();
+        }
+        okHttpClient.dispatcher().executorService().shutdown();
+        okHttpClient.connectionPool().evictAll();
+        mockWebServer.close();
+    }
+
+    @Benchmark
+    public int sync() throws IOException {
+        try (Response response = client.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+
+    @Benchmark
+    public int async() throws InterruptedException {
+        BlockingCallback callback = new BlockingCallback();
+        client.newCall(request).enqueue(callback);
+        return callback.await();
+    }
+
+    static Tracer createTracer(String name) {
+        switch (name) {
+            case "noop":
+                return NoopTracerFactory.create();
+            case "mock":
+                return new MockTracer(new ThreadLocalScopeManager(), MockTracer.Propagator.TEXT_MAP);
+            case "recording":
+                return new RecordingTracer();
+            default:
+                throw new IllegalArgumentException("Unknown tracer: " + name);
+        }
+    }
+
+    static Call.Factory createClient(String name, OkHttpClient okHttpClient, Tracer tracer) {
+        switch (name) {
+            case "bare":
+                return okHttpClient;
+            case "callFactory":
+                return new TracingCallFactory(okHttpClient, tracer);
+            case "sharedCallFactory":
+                return new TracingCallFactory.Builder(okHttpClient, tracer)
+                    .withSharedClient(true)
+                    .build();
+            case "interceptor":
+                return TracingInterceptor.addTracing(okHttpClient.newBuilder(), tracer);
+            default:
+                throw new IllegalArgumentException("Unknown instrumentation: " + name);
+        }
+    }
+
+    /**
+     * Disables Nagle's algorithm on accepted sockets, otherwise delayed ACKs dominate the call latency.
+     */
+    static class NoDelayServerSocketFactory extends ServerSocketFactory {
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress ifAddress) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static class BlockingCallback implements Callback {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile int code = -1;
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            latch.countDown();
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            code = response.code();
+            response.close();
+            latch.countDown();
+        }
+
+        int await() throws InterruptedException {
+            latch.await();
+            return code;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.opentracing.contrib.okhttp3.benchmarks;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Tracer emulating a reporter: every finished span is converted to a flat map of its data and offered
+ * to a bounded queue, spans are dropped when the queue is full.
+ */
+public class RecordingTracer extends MockTracer {
+    private final BlockingQueue<Map<String, Object>> reported = new ArrayBlockingQueue<>(100_000);
+
+    public RecordingTracer() {
+        super(new ThreadLocalScopeManager(), Propagator.TEXT_MAP);
+    }
+
+    @Override
+    protected void onSpanFinished(MockSpan mockSpan) {
+        Map<String, Object> data = new HashMap<>(mockSpan.tags());
+        data.put("operationName", mockSpan.operationName());
+        data.put("traceId", mockSpan.context().traceId());
+        data.put("spanId", mockSpan.context().spanId());
+        data.put("parentId", mockSpan.parentId());
+        data.put("duration", mockSpan.finishMicros() - mockSpan.startMicros());
+        data.put("logs", mockSpan.logEntries().size());
+        reported.offer(data);
+    }
+
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        reported.clear();
+    }
+}
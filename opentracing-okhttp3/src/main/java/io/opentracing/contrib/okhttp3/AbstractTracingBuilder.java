@@ -0,0 +1,243 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Tracer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builder of options shared by {@link TracingCallFactory} and {@link TracingInterceptor}.
+ *
+ * @param <B> type of the builder
+ */
+abstract class AbstractTracingBuilder<B extends AbstractTracingBuilder<B>> {
+    Tracer tracer;
+    List<OkHttpClientSpanDecorator> decorators = Collections.singletonList(OkHttpClientSpanDecorator.STANDARD_TAGS);
+    boolean finishOnResponseBody;
+    boolean payloadSizes;
+    boolean dispatcherTags;
+    SampledSpanPredicate sampledSpanPredicate = SampledSpanPredicate.NOT_NOOP;
+    OperationNameStrategy operationNameStrategy = OperationNameStrategy.METHOD;
+    TracingRoutes routes;
+    boolean singleSpan;
+    HostRateLimiter rateLimiter;
+    boolean connectionSpans;
+    boolean cacheTags;
+    boolean cacheHitSpans = true;
+    long slowCallThresholdMicros = -1;
+    HttpMetrics metrics;
+    PropagationBudget propagationBudget;
+    boolean injectedHeadersCache;
+
+    AbstractTracingBuilder(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * @param decorators span decorators, default {@link OkHttpClientSpanDecorator#STANDARD_TAGS}
+     * @return builder
+     */
+    public B withDecorators(List<OkHttpClientSpanDecorator> decorators) {
+        this.decorators = decorators;
+        return self();
+    }
+
+    /**
+     * Finish spans when the response body is fully read, closed or reading fails instead of when
+     * the response headers are received. Network spans are tagged with {@link OkHttpTags#HTTP_RESPONSE_SIZE}
+     * and {@link OkHttpTags#HTTP_TIME_TO_LAST_BYTE}. The body is streamed, it is not buffered.
+     *
+     * <p>Spans are not finished until the response body is closed.
+     *
+     * @param finishOnResponseBody whether to finish spans at the end of the response body, default false
+     * @return builder
+     */
+    public B withFinishOnResponseBody(boolean finishOnResponseBody) {
+        this.finishOnResponseBody = finishOnResponseBody;
+        return self();
+    }
+
+    /**
+     * Tag network spans with {@link OkHttpTags#HTTP_REQUEST_SIZE} and {@link OkHttpTags#HTTP_RESPONSE_SIZE}.
+     * Request bodies of unknown length are counted while they are written. Response bodies of unknown
+     * length, e.g. chunked, are counted while they are read and their network span is finished when the body
+     * is fully read or closed. In single span mode the call span is the span of the first network request, its
+     * response body is counted only with {@link #withFinishOnResponseBody(boolean)}. Bodies are not buffered.
+     *
+     * @param payloadSizes whether to tag request and response body sizes, default false
+     * @return builder
+     */
+    public B withPayloadSizes(boolean payloadSizes) {
+        this.payloadSizes = payloadSizes;
+        return self();
+    }
+
+    /**
+     * Tag spans of asynchronous calls with time spent in the {@link okhttp3.Dispatcher} queue
+     * ({@link OkHttpTags#QUEUE_WAIT}) and with the number of queued and running calls when the call was enqueued
+     * ({@link OkHttpTags#QUEUED_CALLS}, {@link OkHttpTags#RUNNING_CALLS}). Calls of {@link TracingCallFactory}
+     * are tagged if they are enqueued by the call returned by the factory, calls of {@link TracingInterceptor} if
+     * the client is created by {@link TracingInterceptor#addTracing(okhttp3.OkHttpClient.Builder,
+     * TracingInterceptor, java.util.concurrent.ExecutorService)} with an executor.
+     *
+     * @param dispatcherTags whether to tag dispatcher queue wait and depth, default false
+     * @return builder
+     */
+    public B withDispatcherTags(boolean dispatcherTags) {
+        this.dispatcherTags = dispatcherTags;
+        return self();
+    }
+
+    /**
+     * Spans which are not sampled are not decorated, their phases are not recorded and network spans
+     * are not created for them. Only their context is propagated in request headers.
+     *
+     * @param sampledSpanPredicate predicate deciding whether a span is sampled,
+     *                             default {@link SampledSpanPredicate#NOT_NOOP}
+     * @return builder
+     */
+    public B withSampledSpanPredicate(SampledSpanPredicate sampledSpanPredicate) {
+        this.sampledSpanPredicate = sampledSpanPredicate;
+        return self();
+    }
+
+    /**
+     * @param operationNameStrategy strategy naming call and network spans,
+     *                              default {@link OperationNameStrategy#METHOD}, see {@link UrlTemplateOperationName}
+     * @return builder
+     */
+    public B withOperationNameStrategy(OperationNameStrategy operationNameStrategy) {
+        this.operationNameStrategy = operationNameStrategy;
+        return self();
+    }
+
+    /**
+     * @param routes configuration of tracing per host and path prefix, e.g. routes excluded from tracing
+     * @return builder
+     */
+    public B withRoutes(TracingRoutes routes) {
+        this.routes = routes;
+        return self();
+    }
+
+    /**
+     * Create one client span per call instead of a call span and a network span per hop. The call span is
+     * decorated and its context is propagated to the first hop. Further hops, e.g. redirects, are logged
+     * on the call span and get their own child spans.
+     *
+     * @param singleSpan whether to create one span per call, default false
+     * @return builder
+     */
+    public B withSingleSpan(boolean singleSpan) {
+        this.singleSpan = singleSpan;
+        return self();
+    }
+
+    /**
+     * Limit the rate of traced calls per host. Calls over the limit do not create spans, only the context
+     * of their parent span is propagated. The number of suppressed calls is available in the rate limiter.
+     *
+     * @param rateLimiter rate limiter or null to trace all calls, default null
+     * @return builder
+     */
+    public B withRateLimiter(HostRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return self();
+    }
+
+    /**
+     * Create a span for every newly established connection covering DNS lookup, connect and TLS handshake.
+     * The network span of the request which established the connection references the connection span,
+     * spans of requests reusing the connection are tagged with {@link OkHttpTags#CONNECTION_SPAN}.
+     *
+     * @param connectionSpans whether to create spans of establishing connections, default false
+     * @return builder
+     */
+    public B withConnectionSpans(boolean connectionSpans) {
+        this.connectionSpans = connectionSpans;
+        return self();
+    }
+
+    /**
+     * Tag call spans with {@link OkHttpTags#CACHE}: whether the response was served from the {@link okhttp3.Cache},
+     * validated by a conditional request or fetched from the network.
+     *
+     * @param cacheTags whether to tag the cache outcome, default false
+     * @return builder
+     */
+    public B withCacheTags(boolean cacheTags) {
+        this.cacheTags = cacheTags;
+        return self();
+    }
+
+    /**
+     * Create spans for calls served entirely from the {@link okhttp3.Cache}. If disabled, the call span is started
+     * only when the call reaches the network or fails, with the start timestamp of the call. The call span
+     * is then not active in application interceptors added after the tracing interceptor.
+     *
+     * @param cacheHitSpans whether to create spans of cache hits, default true
+     * @return builder
+     */
+    public B withCacheHitSpans(boolean cacheHitSpans) {
+        this.cacheHitSpans = cacheHitSpans;
+        return self();
+    }
+
+    /**
+     * Keep only spans slower than the threshold, tagged with {@link io.opentracing.tag.Tags#ERROR} or with a 5xx
+     * status code, and parents of kept spans. Context is propagated for every call. Tags and logs are buffered and
+     * passed to the tracer only when the span is kept. Spans are started by the tracer when the call starts, spans
+     * which are not kept are never finished and therefore not reported: the tracer has to tolerate spans which are
+     * never finished.
+     *
+     * <p>The {@link SampledSpanPredicate} receives spans created by the tracer.
+     *
+     * @param threshold threshold, negative to keep all spans, default -1
+     * @param unit unit of the threshold
+     * @return builder
+     */
+    public B withSlowCallThreshold(long threshold, TimeUnit unit) {
+        this.slowCallThresholdMicros = threshold < 0 ? -1 : unit.toMicros(threshold);
+        return self();
+    }
+
+    /**
+     * Record request rate, error rate and latency of all calls, including calls which are not traced.
+     *
+     * @param metrics metrics or null to not record metrics, default null
+     * @return builder
+     */
+    public B withMetrics(HttpMetrics metrics) {
+        this.metrics = metrics;
+        return self();
+    }
+
+    /**
+     * Limit headers injected by the tracer, e.g. to bound the size of propagated baggage.
+     *
+     * @param propagationBudget budget or null to inject all headers, default null
+     * @return builder
+     */
+    public B withPropagationBudget(PropagationBudget propagationBudget) {
+        this.propagationBudget = propagationBudget;
+        return self();
+    }
+
+    /**
+     * Cache headers injected for the parent context of untraced calls, e.g. calls over the rate limit, so
+     * the context is serialized only once. Enable only if span contexts of the tracer are immutable, a context
+     * changed in place, e.g. by setting a baggage item of a Brave span, would propagate stale headers.
+     *
+     * @param injectedHeadersCache whether to cache injected headers per span context, default false
+     * @return builder
+     */
+    public B withInjectedHeadersCache(boolean injectedHeadersCache) {
+        this.injectedHeadersCache = injectedHeadersCache;
+        return self();
+    }
+
+    @SuppressWarnings("unchecked")
+    private B self() {
+        return (B) this;
+    }
+}
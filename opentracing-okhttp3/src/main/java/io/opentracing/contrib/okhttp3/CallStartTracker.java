@@ -0,0 +1,337 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Captures state of calls on the thread which executes or enqueues them. The state is removed when
+ * the application interceptor starts, possibly on a {@link Dispatcher} thread. A call has a state only if it was
+ * started by a client with the event listener of this tracker, the same interceptor can be added to clients
+ * without it.
+ *
+ * <p>OkHttp notifies the listener about the start of a call before the call is passed to the dispatcher, whether
+ * a call is enqueued is therefore recorded explicitly: calls wrapped by {@link #track(Call)} mark themselves while
+ * they are enqueued, and calls run by an executor wrapped by {@link #dispatcherExecutor(ExecutorService)} are
+ * marked when their application interceptor starts. Other calls are treated as executed synchronously.
+ *
+ * <p>The executor wrapper also activates the captured parent span of a dispatched call from the start of its
+ * application interceptor until the call is completed, including its {@link Callback}. The parent is correct also
+ * for calls waiting in the dispatcher queue which are promoted on the thread of another call.
+ */
+class CallStartTracker {
+    private final Tracer tracer;
+    private final boolean captureParentContext;
+    private final boolean captureDispatcher;
+    private final WeakConcurrentMap<Call, CallStart> callStarts = new WeakConcurrentMap<>();
+    /**
+     * Call being enqueued on the thread by {@link TrackedCall#enqueue(Callback)}.
+     */
+    private final ThreadLocal<Call> enqueuingCalls = new ThreadLocal<>();
+    /**
+     * Set on a thread of the dispatcher executor while it runs a dispatched call.
+     */
+    private final ThreadLocal<Dispatch> dispatches = new ThreadLocal<>();
+
+    /**
+     * @param tracer tracer
+     * @param captureParentContext whether to capture context of the active span
+     * @param captureDispatcher whether to capture start time and dispatcher depth
+     */
+    CallStartTracker(Tracer tracer, boolean captureParentContext, boolean captureDispatcher) {
+        this.tracer = tracer;
+        this.captureParentContext = captureParentContext;
+        this.captureDispatcher = captureDispatcher;
+    }
+
+    /**
+     * @param delegate factory of listeners which are notified about all events, can be null
+     * @param dispatcher dispatcher of the client or null if not known
+     * @return event listener factory capturing call starts
+     */
+    EventListener.Factory eventListenerFactory(final EventListener.Factory delegate, final Dispatcher dispatcher) {
+        return new EventListener.Factory() {
+            @Override
+            public EventListener create(Call call) {
+                EventListener listener = delegate != null ? delegate.create(call) : EventListener.NONE;
+                return new DelegatingEventListener(listener) {
+                    @Override
+                    public void callStart(Call call) {
+                        start(call, dispatcher);
+                        super.callStart(call);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @param call call created by a client with the event listener of this tracker
+     * @return call recording when it is enqueued, or the call if dispatcher state is not captured
+     */
+    Call track(Call call) {
+        return captureDispatcher ? new TrackedCall(call) : call;
+    }
+
+    /**
+     * @param delegate executor of a dispatcher of a client with the event listener of this tracker
+     * @return executor recording that calls are enqueued and activating their parent spans, or the executor
+     *         if neither parent context nor dispatcher state is captured
+     */
+    ExecutorService dispatcherExecutor(ExecutorService delegate) {
+        return captureParentContext || captureDispatcher ? new DispatcherExecutor(delegate) : delegate;
+    }
+
+    /**
+     * Invoked when the application interceptor starts.
+     *
+     * @param call call
+     * @return state of the call or null if the call was not started by a client with the event listener
+     */
+    CallStart remove(Call call) {
+        CallStart callStart = callStarts.remove(call);
+        Dispatch dispatch = dispatches.get();
+        if (dispatch != null && !dispatch.intercepted) {
+            // the first application interceptor on a dispatcher thread belongs to the dispatched call
+            dispatch.intercepted = true;
+            if (callStart != null) {
+                if (captureDispatcher) {
+                    callStart.enqueued();
+                }
+                if (callStart.parentSpan != null) {
+                    // closed by the executor when the call and its callback are completed
+                    dispatch.parentScope = tracer.activateSpan(callStart.parentSpan);
+                }
+            }
+        }
+        return callStart;
+    }
+
+    private void start(Call call, Dispatcher dispatcher) {
+        Span parentSpan = captureParentContext ? tracer.activeSpan() : null;
+        if (captureDispatcher) {
+            CallStart callStart = new CallStart(parentSpan, System.nanoTime(), dispatcher);
+            if (enqueuingCalls.get() == call) {
+                callStart.enqueued();
+            }
+            callStarts.put(call, callStart);
+        } else if (captureParentContext) {
+            callStarts.put(call, parentSpan != null
+                ? new CallStart(parentSpan, 0, null) : CallStart.NO_PARENT);
+        }
+    }
+
+    static class CallStart {
+        /**
+         * State of a call started without an active span and without dispatcher state.
+         */
+        static final CallStart NO_PARENT = new CallStart(null, 0, null);
+
+        /**
+         * Span active when the call was started or null.
+         */
+        private final Span parentSpan;
+        final SpanContext parentContext;
+        private final long nanos;
+        /**
+         * Dispatcher of the client or null if not known.
+         */
+        private final Dispatcher dispatcher;
+        /**
+         * Fields below are written on the thread starting the call or on the thread running its application
+         * interceptor.
+         */
+        private boolean enqueued;
+        private int queuedCalls = -1;
+        private int runningCalls = -1;
+
+        CallStart(Span parentSpan, long nanos, Dispatcher dispatcher) {
+            this.parentSpan = parentSpan;
+            this.parentContext = parentSpan != null ? parentSpan.context() : null;
+            this.nanos = nanos;
+            this.dispatcher = dispatcher;
+        }
+
+        /**
+         * Mark the call as enqueued and read the dispatcher depth. The counts are synchronized on the dispatcher,
+         * they are therefore not read for calls executed synchronously.
+         */
+        private void enqueued() {
+            enqueued = true;
+            if (dispatcher != null) {
+                queuedCalls = dispatcher.queuedCallsCount();
+                runningCalls = dispatcher.runningCallsCount();
+            }
+        }
+
+        /**
+         * Tag dispatcher queue wait and depth if the call was enqueued. Invoked when the application interceptor
+         * starts.
+         *
+         * @param span call span
+         */
+        void setDispatcherTags(Span span) {
+            if (isEnqueued()) {
+                setDispatcherTags(span, System.nanoTime());
+            }
+        }
+
+        /**
+         * @return whether the call was recorded as enqueued
+         */
+        boolean isEnqueued() {
+            return enqueued;
+        }
+
+        /**
+         * @param span call span
+         * @param interceptNanos {@link System#nanoTime()} when the application interceptor started
+         */
+        void setDispatcherTags(Span span, long interceptNanos) {
+            OkHttpTags.QUEUE_WAIT.set(span, (interceptNanos - nanos) / 1000);
+            if (queuedCalls != -1) {
+                OkHttpTags.QUEUED_CALLS.set(span, queuedCalls);
+                OkHttpTags.RUNNING_CALLS.set(span, runningCalls);
+            }
+        }
+    }
+
+    /**
+     * Call marking itself while it is enqueued, the event listener is notified about its start during
+     * {@link Call#enqueue(Callback)}. Callbacks receive the wrapped call.
+     */
+    private class TrackedCall implements Call {
+        private final Call delegate;
+
+        TrackedCall(Call delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Request request() {
+            return delegate.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            return delegate.execute();
+        }
+
+        @Override
+        public void enqueue(Callback responseCallback) {
+            Call enqueuing = enqueuingCalls.get();
+            enqueuingCalls.set(delegate);
+            try {
+                delegate.enqueue(responseCallback);
+            } finally {
+                if (enqueuing != null) {
+                    enqueuingCalls.set(enqueuing);
+                } else {
+                    enqueuingCalls.remove();
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            delegate.cancel();
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return delegate.isExecuted();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return delegate.isCanceled();
+        }
+
+        @Override
+        public Call clone() {
+            return new TrackedCall(delegate.clone());
+        }
+    }
+
+    /**
+     * State of a thread of the dispatcher executor running a call.
+     */
+    private static class Dispatch {
+        /**
+         * Whether the application interceptor of the dispatched call started.
+         */
+        private boolean intercepted;
+        /**
+         * Scope of the parent span of the dispatched call or null.
+         */
+        private Scope parentScope;
+    }
+
+    /**
+     * Executor of a dispatcher marking the threads running its calls.
+     */
+    private class DispatcherExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+
+        DispatcherExecutor(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            delegate.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Dispatch dispatch = new Dispatch();
+                    dispatches.set(dispatch);
+                    try {
+                        command.run();
+                    } finally {
+                        dispatches.remove();
+                        if (dispatch.parentScope != null) {
+                            dispatch.parentScope.close();
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
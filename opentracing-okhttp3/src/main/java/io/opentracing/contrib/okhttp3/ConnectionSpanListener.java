@@ -0,0 +1,229 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * Event listener creating a span for every connection established by a call. The span covers DNS lookup,
+ * connect and TLS handshake, phases are added as logs. The span is a child of the call span, which is
+ * captured explicitly when establishing the connection starts: the sampled call span proceeding on the thread or
+ * the deferred call span, which is started then because the call reaches the network. Its context is stored with
+ * the connection, network spans reference it, see {@link ConnectionTags}. Calls without a sampled call span, e.g.
+ * calls of excluded routes or over the rate limit, do not create connect spans.
+ */
+class ConnectionSpanListener extends DelegatingEventListener {
+    static final String OPERATION_NAME = "connect";
+
+    /**
+     * Sampled call span of the call proceeding on the thread, set like an active span by the call interceptor.
+     */
+    private static final ThreadLocal<Span> callSpans = new ThreadLocal<>();
+
+    private final Tracer tracer;
+    private final SampledSpanPredicate sampledSpanPredicate;
+
+    private long startMicros;
+    private long startNanos;
+    private List<Event> events;
+    private SpanContext parentContext;
+
+    ConnectionSpanListener(Tracer tracer, SampledSpanPredicate sampledSpanPredicate, EventListener delegate) {
+        super(delegate);
+        this.tracer = tracer;
+        this.sampledSpanPredicate = sampledSpanPredicate;
+    }
+
+    /**
+     * Make the call span the parent of connect spans of the call proceeding on the current thread.
+     *
+     * @param callSpan sampled call span
+     * @return previous call span, to be passed to {@link #restore(Span)}
+     */
+    static Span activate(Span callSpan) {
+        Span previous = callSpans.get();
+        callSpans.set(callSpan);
+        return previous;
+    }
+
+    /**
+     * @param previous call span returned by {@link #activate(Span)}
+     */
+    static void restore(Span previous) {
+        if (previous != null) {
+            callSpans.set(previous);
+        } else {
+            callSpans.remove();
+        }
+    }
+
+    private synchronized void start(String event) {
+        if (events == null) {
+            DeferredSpan deferredSpan = DeferredSpan.active();
+            Span parent = deferredSpan != null ? deferredSpan.start() : callSpans.get();
+            if (parent == null || !sampledSpanPredicate.isSampled(parent)) {
+                // the call is not traced
+                return;
+            }
+            startMicros = System.currentTimeMillis() * 1000;
+            startNanos = System.nanoTime();
+            events = new ArrayList<>(8);
+            parentContext = parent.context();
+        }
+        record(event, null);
+    }
+
+    private synchronized void record(String event, String message) {
+        if (events != null) {
+            events.add(new Event(event, startMicros + (System.nanoTime() - startNanos) / 1000, message));
+        }
+    }
+
+    /**
+     * Create the connection span if a connection was being established.
+     *
+     * @param connection established connection or null if establishing failed
+     * @param error error or null
+     */
+    private synchronized void finish(Connection connection, IOException error) {
+        if (events == null) {
+            return;
+        }
+        Span span = tracer.buildSpan(OPERATION_NAME)
+            .withTag(Tags.COMPONENT.getKey(), TracingCallFactory.COMPONENT_NAME)
+            .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+            .withStartTimestamp(startMicros)
+            .asChildOf(parentContext)
+            .start();
+        for (Event event: events) {
+            Map<String, Object> fields = new HashMap<>(2);
+            fields.put("event", event.name);
+            if (event.message != null) {
+                fields.put("message", event.message);
+            }
+            span.log(event.micros, fields);
+        }
+        events = null;
+        parentContext = null;
+
+        if (connection != null) {
+            ConnectionTags connectionTags = ConnectionTags.of(connection);
+            connectionTags.setPeer(span);
+            connectionTags.setIdentity(span);
+            if (!(span instanceof NoopSpan)) {
+                connectionTags.connectSpan(span.context());
+            }
+        }
+        if (error != null) {
+            Tags.ERROR.set(span, Boolean.TRUE);
+        }
+        span.finish();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        start(TracingEventListener.DNS_START);
+        super.dnsStart(call, domainName);
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        record(TracingEventListener.DNS_END, null);
+        super.dnsEnd(call, domainName, inetAddressList);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        start(TracingEventListener.CONNECT_START);
+        super.connectStart(call, inetSocketAddress, proxy);
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        record(TracingEventListener.TLS_START, null);
+        super.secureConnectStart(call);
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        record(TracingEventListener.TLS_END, null);
+        super.secureConnectEnd(call, handshake);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        record(TracingEventListener.CONNECT_END, null);
+        super.connectEnd(call, inetSocketAddress, proxy, protocol);
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+        IOException ioe) {
+        record(TracingEventListener.CONNECT_FAILED, ioe.getMessage());
+        super.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        finish(connection, null);
+        super.connectionAcquired(call, connection);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        finish(null, ioe);
+        super.callFailed(call, ioe);
+    }
+
+    private static class Event {
+        private final String name;
+        private final long micros;
+        private final String message;
+
+        Event(String name, long micros, String message) {
+            this.name = name;
+            this.micros = micros;
+            this.message = message;
+        }
+    }
+
+    static class Factory implements EventListener.Factory {
+        private final TracingOptions options;
+        private final EventListener.Factory delegate;
+
+        /**
+         * @param options options
+         * @param delegate factory of listeners which are notified about all events, can be null
+         */
+        Factory(TracingOptions options, EventListener.Factory delegate) {
+            this.options = options;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public EventListener create(Call call) {
+            EventListener listener = delegate != null ? delegate.create(call) : EventListener.NONE;
+            if (!options.route(call.request().url()).traced) {
+                // excluded route or no-op tracer, the call never has a call span
+                return listener;
+            }
+            return new ConnectionSpanListener(options.tracer, options.sampledSpanPredicate, listener);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.tag.Tags;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Connection;
+import okhttp3.Route;
+
+/**
+ * Peer and identity tags of a connection. Peer values are computed from the {@link Route} resolved by OkHttp,
+ * therefore no reverse DNS lookup is done. Values are cached for each {@link Connection} so requests reusing
+ * a keep-alive connection do not compute them again. The context of the span of establishing the connection
+ * is also kept, see {@link ConnectionSpanListener}.
+ */
+final class ConnectionTags {
+    private static final WeakConcurrentMap<Connection, ConnectionTags> cache = new WeakConcurrentMap<>();
+    private static final AtomicLong connectionIds = new AtomicLong();
+
+    private final String hostname;
+    private final Integer port;
+    private final Integer ipv4;
+    private final String ipv6;
+    private final Long connectionId;
+    private final String protocol;
+    /**
+     * Number of responses received on the connection and decorated with connection tags.
+     */
+    private final AtomicLong responses = new AtomicLong();
+    /**
+     * Context of the span of establishing the connection or null.
+     */
+    private volatile SpanContext connectSpanContext;
+    private volatile String connectSpanReference;
+    private final AtomicBoolean connectSpanClaimed = new AtomicBoolean();
+
+    private ConnectionTags(String hostname, int port, Integer ipv4, String ipv6, String protocol) {
+        this.hostname = hostname;
+        this.port = port;
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+        this.connectionId = connectionIds.incrementAndGet();
+        this.protocol = protocol;
+    }
+
+    static ConnectionTags of(Connection connection) {
+        ConnectionTags connectionTags = cache.get(connection);
+        if (connectionTags == null) {
+            connectionTags = create(connection.route(), connection.protocol().toString());
+            ConnectionTags previous = cache.putIfAbsent(connection, connectionTags);
+            if (previous != null) {
+                connectionTags = previous;
+            }
+        }
+        return connectionTags;
+    }
+
+    static ConnectionTags create(Route route, String protocol) {
+        InetSocketAddress socketAddress = route.socketAddress();
+        String hostname = route.proxy().type() == Proxy.Type.DIRECT
+            ? route.address().url().host() : socketAddress.getHostString();
+
+        Integer ipv4 = null;
+        String ipv6 = null;
+        InetAddress inetAddress = socketAddress.getAddress();
+        if (inetAddress instanceof Inet4Address) {
+            byte[] address = inetAddress.getAddress();
+            ipv4 = (address[0] & 0xFF) << 24 | (address[1] & 0xFF) << 16 | (address[2] & 0xFF) << 8 | (address[3] & 0xFF);
+        } else if (inetAddress != null) {
+            ipv6 = inetAddress.getHostAddress();
+        }
+        return new ConnectionTags(hostname, socketAddress.getPort(), ipv4, ipv6, protocol);
+    }
+
+    void setPeer(Span span) {
+        Tags.PEER_HOSTNAME.set(span, hostname);
+        Tags.PEER_PORT.set(span, port);
+        if (ipv4 != null) {
+            Tags.PEER_HOST_IPV4.set(span, ipv4);
+        } else if (ipv6 != null) {
+            Tags.PEER_HOST_IPV6.set(span, ipv6);
+        }
+    }
+
+    /**
+     * Set connection identity tags, the connection is considered reused if a response was already received on it.
+     *
+     * @param span span
+     */
+    void setConnection(Span span) {
+        setIdentity(span);
+        OkHttpTags.CONNECTION_REUSED.set(span, responses.getAndIncrement() > 0);
+    }
+
+    /**
+     * Set connection id and protocol.
+     *
+     * @param span span
+     */
+    void setIdentity(Span span) {
+        OkHttpTags.CONNECTION_ID.set(span, connectionId);
+        OkHttpTags.PROTOCOL.set(span, protocol);
+    }
+
+    /**
+     * @param spanContext context of the span of establishing the connection
+     */
+    void connectSpan(SpanContext spanContext) {
+        connectSpanReference = spanContext.toTraceId() + ":" + spanContext.toSpanId();
+        connectSpanContext = spanContext;
+    }
+
+    /**
+     * Claim the connect span to be referenced by the span of the first request on the connection.
+     *
+     * @return context of the connect span or null if there is none or it was already claimed
+     */
+    SpanContext claimConnectSpan() {
+        SpanContext spanContext = connectSpanContext;
+        return spanContext != null && connectSpanClaimed.compareAndSet(false, true) ? spanContext : null;
+    }
+
+    /**
+     * Tag the span with reference to the connect span if there is one.
+     *
+     * @param span span
+     */
+    void setConnectSpanReference(Span span) {
+        String reference = connectSpanReference;
+        if (reference != null) {
+            OkHttpTags.CONNECTION_SPAN.set(span, reference);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * Request body of unknown length which counts written bytes and tags them as
+ * {@link OkHttpTags#HTTP_REQUEST_SIZE}. The body is streamed, it is not buffered.
+ */
+class CountingRequestBody extends RequestBody {
+    private final RequestBody delegate;
+    private final Span span;
+
+    CountingRequestBody(RequestBody delegate, Span span) {
+        this.delegate = delegate;
+        this.span = span;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        CountingSink countingSink = new CountingSink(sink);
+        BufferedSink bufferedSink = Okio.buffer(countingSink);
+        try {
+            delegate.writeTo(bufferedSink);
+            bufferedSink.emit();
+        } finally {
+            OkHttpTags.HTTP_REQUEST_SIZE.set(span, countingSink.bytesWritten);
+        }
+    }
+
+    private static class CountingSink extends ForwardingSink {
+        private long bytesWritten;
+
+        CountingSink(BufferedSink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            bytesWritten += byteCount;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+/**
+ * Call span which is started only when the call reaches the network or fails. Calls served entirely from
+ * the {@link okhttp3.Cache} therefore do not build a span at all. The span is started with the timestamp
+ * of the creation of this object.
+ */
+final class DeferredSpan {
+    /**
+     * Deferred span of the call proceeding on the thread, set like an active span.
+     */
+    private static final ThreadLocal<DeferredSpan> activeSpans = new ThreadLocal<>();
+
+    private final Tracer.SpanBuilder spanBuilder;
+    private final SampledSpanPredicate sampledSpanPredicate;
+    private final long startMicros = System.currentTimeMillis() * 1000;
+    private CallStartTracker.CallStart callStart;
+    private long interceptNanos;
+    private Span span;
+
+    /**
+     * @param spanBuilder span builder with the parent already set or the active span ignored
+     * @param sampledSpanPredicate sampled span predicate
+     */
+    DeferredSpan(Tracer.SpanBuilder spanBuilder, SampledSpanPredicate sampledSpanPredicate) {
+        this.spanBuilder = spanBuilder;
+        this.sampledSpanPredicate = sampledSpanPredicate;
+    }
+
+    /**
+     * Remember the call start to tag dispatcher queue wait and depth when the span is started. Invoked when
+     * the application interceptor starts.
+     *
+     * @param callStart call start
+     */
+    synchronized void callStart(CallStartTracker.CallStart callStart) {
+        if (callStart.isEnqueued()) {
+            this.callStart = callStart;
+            this.interceptNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return the span, started if it was not started yet
+     */
+    synchronized Span start() {
+        if (span == null) {
+            span = spanBuilder.withStartTimestamp(startMicros).start();
+            if (callStart != null && sampledSpanPredicate.isSampled(span)) {
+                callStart.setDispatcherTags(span, interceptNanos);
+            }
+        }
+        return span;
+    }
+
+    /**
+     * @return the span or null if it was not started
+     */
+    synchronized Span span() {
+        return span;
+    }
+
+    /**
+     * Make this deferred span active on the current thread while the call proceeds.
+     *
+     * @return previously active deferred span, to be passed to {@link #restore(DeferredSpan)}
+     */
+    DeferredSpan activate() {
+        DeferredSpan previous = activeSpans.get();
+        activeSpans.set(this);
+        return previous;
+    }
+
+    /**
+     * @param previous deferred span returned by {@link #activate()}
+     */
+    static void restore(DeferredSpan previous) {
+        if (previous != null) {
+            activeSpans.set(previous);
+        } else {
+            activeSpans.remove();
+        }
+    }
+
+    /**
+     * @return deferred span of the call proceeding on the current thread or null
+     */
+    static DeferredSpan active() {
+        return activeSpans.get();
+    }
+}
@@ -0,0 +1,132 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Dispatcher;
+
+/**
+ * Periodically samples the number of queued and running calls of a {@link Dispatcher}, e.g. of every client
+ * which can saturate its limits. A sample reads two counters of the dispatcher and does not allocate.
+ *
+ * <pre>{@code
+ * DispatcherSampler sampler = new DispatcherSampler(okHttpClient.dispatcher(), scheduler, 1, TimeUnit.SECONDS);
+ * DispatcherSampler.Snapshot snapshot = sampler.snapshotAndReset();
+ * }</pre>
+ */
+public class DispatcherSampler implements Closeable {
+    private final Dispatcher dispatcher;
+    private final ScheduledFuture<?> future;
+
+    private long samples;
+    private long queuedCallsSum;
+    private long runningCallsSum;
+    private int maxQueuedCalls;
+    private int maxRunningCalls;
+
+    /**
+     * @param dispatcher dispatcher to sample
+     * @param scheduler scheduler running the sampling, it is not shut down by {@link #close()}
+     * @param period sampling period
+     * @param unit unit of the period
+     */
+    public DispatcherSampler(Dispatcher dispatcher, ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        this.dispatcher = dispatcher;
+        this.future = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Take a sample of the dispatcher depth. Invoked periodically by the scheduler.
+     */
+    public void sample() {
+        int queuedCalls = dispatcher.queuedCallsCount();
+        int runningCalls = dispatcher.runningCallsCount();
+        synchronized (this) {
+            samples++;
+            queuedCallsSum += queuedCalls;
+            runningCallsSum += runningCalls;
+            maxQueuedCalls = Math.max(maxQueuedCalls, queuedCalls);
+            maxRunningCalls = Math.max(maxRunningCalls, runningCalls);
+        }
+    }
+
+    /**
+     * @return statistics of samples taken since creation or the last reset
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(samples, queuedCallsSum, runningCallsSum, maxQueuedCalls, maxRunningCalls);
+    }
+
+    /**
+     * @return statistics of samples taken since creation or the last reset, the statistics are then reset
+     */
+    public synchronized Snapshot snapshotAndReset() {
+        Snapshot snapshot = snapshot();
+        samples = 0;
+        queuedCallsSum = 0;
+        runningCallsSum = 0;
+        maxQueuedCalls = 0;
+        maxRunningCalls = 0;
+        return snapshot;
+    }
+
+    /**
+     * Stop sampling.
+     */
+    @Override
+    public void close() {
+        future.cancel(false);
+    }
+
+    /**
+     * Statistics of dispatcher depth samples.
+     */
+    public static class Snapshot {
+        private final long samples;
+        private final long queuedCallsSum;
+        private final long runningCallsSum;
+        private final int maxQueuedCalls;
+        private final int maxRunningCalls;
+
+        Snapshot(long samples, long queuedCallsSum, long runningCallsSum, int maxQueuedCalls, int maxRunningCalls) {
+            this.samples = samples;
+            this.queuedCallsSum = queuedCallsSum;
+            this.runningCallsSum = runningCallsSum;
+            this.maxQueuedCalls = maxQueuedCalls;
+            this.maxRunningCalls = maxRunningCalls;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public int getMaxQueuedCalls() {
+            return maxQueuedCalls;
+        }
+
+        public int getMaxRunningCalls() {
+            return maxRunningCalls;
+        }
+
+        /**
+         * @return mean number of queued calls or 0 if there are no samples
+         */
+        public double getMeanQueuedCalls() {
+            return samples == 0 ? 0 : (double) queuedCallsSum / samples;
+        }
+
+        /**
+         * @return mean number of running calls or 0 if there are no samples
+         */
+        public double getMeanRunningCalls() {
+            return samples == 0 ? 0 : (double) runningCallsSum / samples;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * State of calls executed by {@link TracingCallFactory#executeAll(List)}. Results are stored by the callbacks
+ * of the calls, the last completed call finishes the fan-out span and completes the future.
+ */
+final class FanOut {
+    static final String OPERATION_NAME = "fan-out";
+    static final String MEMBER_EVENT = "fan_out.member";
+
+    final Span span;
+    final CompletableFuture<FanOutResult> future = new CompletableFuture<>();
+
+    private final Tracer tracer;
+    private final List<Request> requests;
+    private final long startNanos = System.nanoTime();
+    private final Response[] responses;
+    private final IOException[] errors;
+    private final long[] latencyMicros;
+    private final AtomicInteger remaining;
+
+    FanOut(Tracer tracer, List<Request> requests) {
+        this.tracer = tracer;
+        this.requests = requests;
+        this.responses = new Response[requests.size()];
+        this.errors = new IOException[requests.size()];
+        this.latencyMicros = new long[requests.size()];
+        this.remaining = new AtomicInteger(requests.size());
+        this.span = tracer.buildSpan(OPERATION_NAME)
+            .withTag(Tags.COMPONENT.getKey(), TracingCallFactory.COMPONENT_NAME)
+            .withTag(OkHttpTags.FAN_OUT_SIZE.getKey(), requests.size())
+            .start();
+        if (requests.isEmpty()) {
+            finish();
+        }
+    }
+
+    /**
+     * @param index index of the call
+     * @return callback of the call
+     */
+    Callback member(final int index) {
+        return new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                complete(index, null, e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                complete(index, response, null);
+            }
+        };
+    }
+
+    /**
+     * Abort the fan-out if creating a call failed. Spans of the calls created before the failure have to be
+     * finished by the caller, the calls are never executed.
+     *
+     * @param error failure
+     */
+    void fail(RuntimeException error) {
+        Tags.ERROR.set(span, Boolean.TRUE);
+        Map<String, Object> errorLogs = new HashMap<>(2);
+        errorLogs.put("event", Tags.ERROR.getKey());
+        errorLogs.put("error.object", error);
+        span.log(errorLogs);
+        span.finish();
+        future.completeExceptionally(error);
+    }
+
+    private void complete(int index, Response response, IOException error) {
+        latencyMicros[index] = (System.nanoTime() - startNanos) / 1000;
+        responses[index] = response;
+        errors[index] = error;
+        // the decrement publishes the results to the thread finishing the fan-out
+        if (remaining.decrementAndGet() == 0) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        int failures = 0;
+        int slowestIndex = -1;
+        for (int i = 0; i < requests.size(); i++) {
+            Map<String, Object> fields = new HashMap<>(6);
+            fields.put("event", MEMBER_EVENT);
+            fields.put("index", i);
+            fields.put(Tags.HTTP_URL.getKey(), requests.get(i).url().toString());
+            fields.put("latency_micros", latencyMicros[i]);
+            if (errors[i] != null) {
+                failures++;
+                fields.put(Tags.ERROR.getKey(), true);
+                fields.put("message", errors[i].getMessage());
+            } else {
+                fields.put(Tags.HTTP_STATUS.getKey(), responses[i].code());
+            }
+            span.log(fields);
+            if (slowestIndex == -1 || latencyMicros[i] > latencyMicros[slowestIndex]) {
+                slowestIndex = i;
+            }
+        }
+        OkHttpTags.FAN_OUT_FAILURES.set(span, failures);
+        if (slowestIndex != -1) {
+            OkHttpTags.FAN_OUT_SLOWEST_INDEX.set(span, slowestIndex);
+            OkHttpTags.FAN_OUT_SLOWEST_LATENCY.set(span, latencyMicros[slowestIndex]);
+        }
+        if (failures > 0) {
+            Tags.ERROR.set(span, Boolean.TRUE);
+        }
+        span.finish();
+
+        FanOutResult result = new FanOutResult(requests, responses, errors, latencyMicros, slowestIndex);
+        try (Scope scope = tracer.activateSpan(span)) {
+            if (!future.complete(result)) {
+                result.close();
+            }
+        }
+    }
+}
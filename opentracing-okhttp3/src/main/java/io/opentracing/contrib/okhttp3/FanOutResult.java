@@ -0,0 +1,97 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Results of calls executed by {@link TracingCallFactory#executeAll(List)}, in the order of the requests.
+ * Every call has either a response or an error. Responses have to be closed, e.g. by {@link #close()}.
+ */
+public final class FanOutResult implements Closeable {
+    private final List<Request> requests;
+    private final Response[] responses;
+    private final IOException[] errors;
+    private final long[] latencyMicros;
+    private final int slowestIndex;
+
+    FanOutResult(List<Request> requests, Response[] responses, IOException[] errors, long[] latencyMicros,
+        int slowestIndex) {
+        this.requests = requests;
+        this.responses = responses;
+        this.errors = errors;
+        this.latencyMicros = latencyMicros;
+        this.slowestIndex = slowestIndex;
+    }
+
+    /**
+     * @return number of calls
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    public Request getRequest(int index) {
+        return requests.get(index);
+    }
+
+    /**
+     * @param index index of the call
+     * @return response or null if the call failed
+     */
+    public Response getResponse(int index) {
+        return responses[index];
+    }
+
+    /**
+     * @param index index of the call
+     * @return error or null if the call succeeded
+     */
+    public IOException getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * @param index index of the call
+     * @return time from the start of the fan-out until the response headers were received or the call failed,
+     *         in microseconds
+     */
+    public long getLatencyMicros(int index) {
+        return latencyMicros[index];
+    }
+
+    /**
+     * @return index of the slowest call, -1 if there are no calls
+     */
+    public int getSlowestIndex() {
+        return slowestIndex;
+    }
+
+    /**
+     * @return number of failed calls
+     */
+    public int getFailures() {
+        int failures = 0;
+        for (IOException error: errors) {
+            if (error != null) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Close all responses.
+     */
+    @Override
+    public void close() {
+        for (Response response: responses) {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+}
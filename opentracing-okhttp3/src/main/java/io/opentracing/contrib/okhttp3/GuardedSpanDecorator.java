@@ -0,0 +1,349 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.Connection;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Decorator measuring and protecting another decorator, e.g. a custom decorator parsing bodies or looking up
+ * configuration on the request thread. Exceptions thrown by the decorator are caught, the first one is logged.
+ * The decorator is disabled for the disable duration and not invoked if a single invocation takes longer than
+ * the maximum invocation time, or if over a window of invocations its average time of an invocation is over
+ * the time budget or its error rate is over the maximum. Disabling is logged.
+ *
+ * <p>The decorator can be disabled between {@link #onRequest(Request, Span)} and
+ * {@link #onResponse(Connection, Response, Span)} of one span, which is then decorated only partially.
+ *
+ * <p>Time is measured with {@link System#nanoTime()}, windows are evaluated without locking and are approximate
+ * under concurrent invocations.
+ *
+ * <pre>{@code
+ * OkHttpClientSpanDecorator decorator = new GuardedSpanDecorator.Builder(customDecorator)
+ *     .withTimeBudget(100, TimeUnit.MICROSECONDS)
+ *     .withMaxInvocationTime(10, TimeUnit.MILLISECONDS)
+ *     .withMaxErrorRate(0.1)
+ *     .build();
+ * }</pre>
+ */
+public class GuardedSpanDecorator implements OkHttpClientSpanDecorator {
+    public static final int DEFAULT_WINDOW = 100;
+
+    private static final Logger log = Logger.getLogger(GuardedSpanDecorator.class.getName());
+
+    private static final long ENABLED = 0;
+
+    private final OkHttpClientSpanDecorator delegate;
+    private final long timeBudgetNanos;
+    private final long maxInvocationNanos;
+    private final double maxErrorRate;
+    private final int window;
+    private final long disableNanos;
+    private final Clock clock;
+
+    private final AtomicInteger windowInvocations = new AtomicInteger();
+    private final AtomicInteger windowErrors = new AtomicInteger();
+    private final AtomicLong windowNanos = new AtomicLong();
+    /**
+     * Time when the decorator is enabled again, {@link #ENABLED} if it is enabled.
+     */
+    private volatile long disabledUntilNanos = ENABLED;
+    private final AtomicBoolean errorLogged = new AtomicBoolean();
+
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final AtomicLong disabledCount = new AtomicLong();
+
+    private GuardedSpanDecorator(Builder builder) {
+        this.delegate = builder.delegate;
+        this.timeBudgetNanos = builder.timeBudgetNanos;
+        this.maxInvocationNanos = builder.maxInvocationNanos;
+        this.maxErrorRate = builder.maxErrorRate;
+        this.window = builder.window;
+        this.disableNanos = builder.disableNanos;
+        this.clock = builder.clock;
+    }
+
+    @Override
+    public void onRequest(Request request, Span span) {
+        if (!isEnabled()) {
+            return;
+        }
+        long startNanos = clock.nanoTime();
+        RuntimeException error = null;
+        try {
+            delegate.onRequest(request, span);
+        } catch (RuntimeException ex) {
+            error = ex;
+        }
+        record(startNanos, error);
+    }
+
+    @Override
+    public void onError(Throwable throwable, Span span) {
+        if (!isEnabled()) {
+            return;
+        }
+        long startNanos = clock.nanoTime();
+        RuntimeException error = null;
+        try {
+            delegate.onError(throwable, span);
+        } catch (RuntimeException ex) {
+            error = ex;
+        }
+        record(startNanos, error);
+    }
+
+    @Override
+    public void onResponse(Connection connection, Response response, Span span) {
+        if (!isEnabled()) {
+            return;
+        }
+        long startNanos = clock.nanoTime();
+        RuntimeException error = null;
+        try {
+            delegate.onResponse(connection, response, span);
+        } catch (RuntimeException ex) {
+            error = ex;
+        }
+        record(startNanos, error);
+    }
+
+    /**
+     * @return statistics of the decorator since it was created
+     */
+    public Stats getStats() {
+        long disabledUntil = disabledUntilNanos;
+        return new Stats(invocations.sum(), errors.sum(), totalNanos.sum(), skipped.sum(), disabledCount.get(),
+            disabledUntil != ENABLED && clock.nanoTime() - disabledUntil < 0);
+    }
+
+    private boolean isEnabled() {
+        long disabledUntil = disabledUntilNanos;
+        if (disabledUntil == ENABLED) {
+            return true;
+        }
+        if (clock.nanoTime() - disabledUntil < 0) {
+            skipped.increment();
+            return false;
+        }
+        disabledUntilNanos = ENABLED;
+        return true;
+    }
+
+    private void record(long startNanos, RuntimeException error) {
+        long nanos = clock.nanoTime() - startNanos;
+        invocations.increment();
+        totalNanos.add(nanos);
+        if (error != null) {
+            errors.increment();
+            windowErrors.incrementAndGet();
+            if (errorLogged.compareAndSet(false, true)) {
+                log.log(Level.WARNING, "Span decorator " + delegate + " failed, further failures are only counted",
+                    error);
+            }
+        }
+        if (nanos > maxInvocationNanos) {
+            disable("invocation took " + TimeUnit.NANOSECONDS.toMicros(nanos) + " us");
+        }
+        windowNanos.addAndGet(nanos);
+        if (windowInvocations.incrementAndGet() == window) {
+            long windowTotalNanos = windowNanos.getAndSet(0);
+            int windowErrorCount = windowErrors.getAndSet(0);
+            windowInvocations.set(0);
+            if (windowTotalNanos / window > timeBudgetNanos) {
+                disable("average invocation took " + TimeUnit.NANOSECONDS.toMicros(windowTotalNanos / window) + " us");
+            } else if (windowErrorCount > maxErrorRate * window) {
+                disable(windowErrorCount + " of " + window + " invocations failed");
+            }
+        }
+    }
+
+    private void disable(String reason) {
+        disabledCount.incrementAndGet();
+        long disabledUntil = clock.nanoTime() + disableNanos;
+        disabledUntilNanos = disabledUntil == ENABLED ? 1 : disabledUntil;
+        log.warning("Span decorator " + delegate + " disabled for "
+            + TimeUnit.NANOSECONDS.toMillis(disableNanos) + " ms, " + reason);
+    }
+
+    /**
+     * Source of {@link System#nanoTime()}, replaced in tests.
+     */
+    interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+        };
+
+        long nanoTime();
+    }
+
+    /**
+     * Statistics of a {@link GuardedSpanDecorator}.
+     */
+    public static final class Stats {
+        private final long invocations;
+        private final long errors;
+        private final long totalNanos;
+        private final long skipped;
+        private final long disabledCount;
+        private final boolean disabled;
+
+        Stats(long invocations, long errors, long totalNanos, long skipped, long disabledCount, boolean disabled) {
+            this.invocations = invocations;
+            this.errors = errors;
+            this.totalNanos = totalNanos;
+            this.skipped = skipped;
+            this.disabledCount = disabledCount;
+            this.disabled = disabled;
+        }
+
+        /**
+         * @return number of invocations of the decorator
+         */
+        public long getInvocations() {
+            return invocations;
+        }
+
+        /**
+         * @return number of invocations which threw an exception
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return cumulative time of invocations in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return number of invocations skipped while the decorator was disabled
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return number of times the decorator was disabled
+         */
+        public long getDisabledCount() {
+            return disabledCount;
+        }
+
+        /**
+         * @return whether the decorator is disabled
+         */
+        public boolean isDisabled() {
+            return disabled;
+        }
+    }
+
+    /**
+     * Builder of {@link GuardedSpanDecorator}.
+     */
+    public static class Builder {
+        private final OkHttpClientSpanDecorator delegate;
+        private long timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        private long maxInvocationNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private double maxErrorRate = 0.1;
+        private int window = DEFAULT_WINDOW;
+        private long disableNanos = TimeUnit.MINUTES.toNanos(1);
+        private Clock clock = Clock.SYSTEM;
+
+        /**
+         * @param delegate decorator to guard
+         */
+        public Builder(OkHttpClientSpanDecorator delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * @param timeBudget maximum average time of an invocation over a window, default 1 millisecond
+         * @param unit unit of the budget
+         * @return builder
+         */
+        public Builder withTimeBudget(long timeBudget, TimeUnit unit) {
+            if (timeBudget < 0) {
+                throw new IllegalArgumentException("timeBudget must not be negative");
+            }
+            this.timeBudgetNanos = unit.toNanos(timeBudget);
+            return this;
+        }
+
+        /**
+         * @param maxInvocationTime maximum time of a single invocation, default 100 milliseconds
+         * @param unit unit of the time
+         * @return builder
+         */
+        public Builder withMaxInvocationTime(long maxInvocationTime, TimeUnit unit) {
+            if (maxInvocationTime < 0) {
+                throw new IllegalArgumentException("maxInvocationTime must not be negative");
+            }
+            this.maxInvocationNanos = unit.toNanos(maxInvocationTime);
+            return this;
+        }
+
+        /**
+         * @param maxErrorRate maximum ratio of invocations throwing an exception, default 0.1
+         * @return builder
+         */
+        public Builder withMaxErrorRate(double maxErrorRate) {
+            if (maxErrorRate < 0 || maxErrorRate > 1) {
+                throw new IllegalArgumentException("maxErrorRate must be between 0 and 1");
+            }
+            this.maxErrorRate = maxErrorRate;
+            return this;
+        }
+
+        /**
+         * @param window number of invocations over which the time and error rate are evaluated,
+         *               default {@link #DEFAULT_WINDOW}
+         * @return builder
+         */
+        public Builder withWindow(int window) {
+            if (window < 1) {
+                throw new IllegalArgumentException("window must be positive");
+            }
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * @param disableDuration how long the decorator is disabled, default 1 minute
+         * @param unit unit of the duration
+         * @return builder
+         */
+        public Builder withDisableDuration(long disableDuration, TimeUnit unit) {
+            if (disableDuration < 0) {
+                throw new IllegalArgumentException("disableDuration must not be negative");
+            }
+            this.disableNanos = unit.toNanos(disableDuration);
+            return this;
+        }
+
+        Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public GuardedSpanDecorator build() {
+            return new GuardedSpanDecorator(this);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the rate of traced calls per host, e.g. to protect the tracer from a burst of calls to one host.
+ * Calls over the limit are not traced, only the context of their parent span is propagated.
+ *
+ * <p>Every host has a token bucket refilled at the given rate and holding at most the given burst.
+ * Buckets are lock-free, each is a single {@link AtomicLong} holding the time when the bucket is full again.
+ * At most {@code maxHosts} buckets are kept, further hosts share one bucket.
+ */
+public class HostRateLimiter {
+    public static final int DEFAULT_MAX_HOSTS = 1024;
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxHosts;
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket overflowBucket;
+    private final LongAdder suppressedCount = new LongAdder();
+
+    /**
+     * @param callsPerSecond traced calls per second per host
+     * @param burst maximum number of traced calls in a burst per host
+     */
+    public HostRateLimiter(double callsPerSecond, int burst) {
+        this(callsPerSecond, burst, DEFAULT_MAX_HOSTS);
+    }
+
+    /**
+     * @param callsPerSecond traced calls per second per host
+     * @param burst maximum number of traced calls in a burst per host
+     * @param maxHosts maximum number of hosts with own bucket
+     */
+    public HostRateLimiter(double callsPerSecond, int burst, int maxHosts) {
+        if (callsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("callsPerSecond and burst have to be positive");
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / callsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        this.maxHosts = maxHosts;
+        this.overflowBucket = new Bucket(System.nanoTime());
+    }
+
+    /**
+     * @param host host of the call
+     * @return whether the call can be traced
+     */
+    public boolean tryAcquire(String host) {
+        if (bucket(host).tryAcquire(intervalNanos, burstNanos)) {
+            return true;
+        }
+        suppressedCount.increment();
+        return false;
+    }
+
+    /**
+     * @return number of calls which were not traced
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.sum();
+    }
+
+    /**
+     * @param host host
+     * @return number of calls to the host which were not traced, for hosts over the maximum number
+     * of hosts the count of all such hosts
+     */
+    public long getSuppressedCount(String host) {
+        Bucket bucket = buckets.get(host);
+        if (bucket == null) {
+            bucket = overflowBucket;
+        }
+        return bucket.suppressedCount.sum();
+    }
+
+    private Bucket bucket(String host) {
+        Bucket bucket = buckets.get(host);
+        if (bucket == null) {
+            if (buckets.size() >= maxHosts) {
+                return overflowBucket;
+            }
+            bucket = new Bucket(System.nanoTime());
+            Bucket previous = buckets.putIfAbsent(host, bucket);
+            if (previous != null) {
+                bucket = previous;
+            }
+        }
+        return bucket;
+    }
+
+    private static class Bucket {
+        /**
+         * Time when the bucket is full again, every traced call moves it by one interval.
+         */
+        private final AtomicLong fullAt;
+        private final LongAdder suppressedCount = new LongAdder();
+
+        Bucket(long nowNanos) {
+            this.fullAt = new AtomicLong(nowNanos);
+        }
+
+        boolean tryAcquire(long intervalNanos, long burstNanos) {
+            long now = System.nanoTime();
+            while (true) {
+                long current = fullAt.get();
+                long next = (current - now > 0 ? current : now) + intervalNanos;
+                if (next - now > burstNanos) {
+                    suppressedCount.increment();
+                    return false;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Request;
+
+/**
+ * Request rate, error rate and latency (RED) metrics of calls per host or per route. Calls are measured
+ * by the call interceptor together with the call span: from the start of the call until the span is finished.
+ * Calls which are not traced, e.g. excluded by routes or suppressed by the rate limiter, are measured
+ * by the same interceptor until the response is received, or until the end of the response body with
+ * finish on response body. Calls failed with an exception or with a 5xx status code are errors.
+ *
+ * <p>Counters are cumulative and striped by {@link LongAdder}, latency is recorded in a histogram with
+ * fixed buckets {@link #BUCKET_BOUNDS_MICROS}. Metrics are exposed by {@link #report(MetricsSink)},
+ * e.g. invoked periodically:
+ * <pre>{@code
+ * HttpMetrics metrics = new HttpMetrics();
+ * Call.Factory client = new TracingCallFactory.Builder(okHttpClient, tracer)
+ *     .withMetrics(metrics)
+ *     .build();
+ * metrics.report(sink);
+ * }</pre>
+ */
+public final class HttpMetrics {
+    /**
+     * Upper bounds of latency buckets in microseconds, the last bucket counts calls over the last bound.
+     */
+    public static final long[] BUCKET_BOUNDS_MICROS = {
+        1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000
+    };
+    public static final int DEFAULT_MAX_KEYS = 1024;
+    /**
+     * Key of calls recorded after the number of keys reached the maximum.
+     */
+    public static final String OTHER_KEY = "other";
+
+    private final boolean perRoute;
+    private final int maxKeys;
+    private final ConcurrentMap<String, Metrics> metrics = new ConcurrentHashMap<>();
+    private final Metrics other = new Metrics();
+
+    /**
+     * Metrics per host.
+     */
+    public HttpMetrics() {
+        this(false, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param perRoute whether to key metrics by host and operation name, e.g. {@code api.example.com GET /users/{id}}
+     *                 with {@link UrlTemplateOperationName}, instead of by host
+     * @param maxKeys maximum number of keys, further calls are recorded under {@link #OTHER_KEY}
+     */
+    public HttpMetrics(boolean perRoute, int maxKeys) {
+        this.perRoute = perRoute;
+        this.maxKeys = maxKeys;
+    }
+
+    void record(Request request, OperationNameStrategy operationNameStrategy, long durationNanos, boolean error) {
+        String key = perRoute
+            ? request.url().host() + " " + operationNameStrategy.operationName(request) : request.url().host();
+        metrics(key).record(durationNanos / 1000, error);
+    }
+
+    private Metrics metrics(String key) {
+        Metrics keyMetrics = metrics.get(key);
+        if (keyMetrics == null) {
+            if (metrics.size() >= maxKeys) {
+                return other;
+            }
+            Metrics newMetrics = new Metrics();
+            keyMetrics = metrics.putIfAbsent(key, newMetrics);
+            if (keyMetrics == null) {
+                keyMetrics = newMetrics;
+            }
+        }
+        return keyMetrics;
+    }
+
+    /**
+     * Pass snapshots of metrics of all keys to the sink.
+     *
+     * @param sink sink
+     */
+    public void report(MetricsSink sink) {
+        for (Map.Entry<String, Metrics> entry: metrics.entrySet()) {
+            sink.report(entry.getKey(), entry.getValue().snapshot());
+        }
+        if (other.requests.sum() > 0) {
+            sink.report(OTHER_KEY, other.snapshot());
+        }
+    }
+
+    private static class Metrics {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder sumMicros = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MICROS.length + 1];
+
+        Metrics() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long micros, boolean error) {
+            requests.increment();
+            if (error) {
+                errors.increment();
+            }
+            sumMicros.add(micros);
+            int bucket = Arrays.binarySearch(BUCKET_BOUNDS_MICROS, micros);
+            buckets[bucket >= 0 ? bucket : -bucket - 1].increment();
+        }
+
+        Snapshot snapshot() {
+            long[] bucketCounts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                bucketCounts[i] = buckets[i].sum();
+            }
+            return new Snapshot(requests.sum(), errors.sum(), sumMicros.sum(), bucketCounts);
+        }
+    }
+
+    /**
+     * Cumulative metrics of a key. Counters are read one by one, therefore they are not necessarily consistent
+     * with each other while calls are being recorded.
+     */
+    public static final class Snapshot {
+        private final long requests;
+        private final long errors;
+        private final long sumMicros;
+        private final long[] bucketCounts;
+
+        Snapshot(long requests, long errors, long sumMicros, long[] bucketCounts) {
+            this.requests = requests;
+            this.errors = errors;
+            this.sumMicros = sumMicros;
+            this.bucketCounts = bucketCounts;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return sum of latencies in microseconds
+         */
+        public long getSumMicros() {
+            return sumMicros;
+        }
+
+        /**
+         * @return number of calls in each latency bucket, bounds are {@link #BUCKET_BOUNDS_MICROS}
+         */
+        public long[] getBucketCounts() {
+            return bucketCounts.clone();
+        }
+    }
+}
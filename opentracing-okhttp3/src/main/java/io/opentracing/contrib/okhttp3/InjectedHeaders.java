@@ -0,0 +1,82 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Headers injected by the tracer cached per span context. The parent context of untraced calls, e.g. calls over
+ * the rate limit, is propagated by many requests and is serialized only once. The cache belongs to the options
+ * of one tracer and assumes its span contexts are immutable, which does not hold for every tracer, e.g. setting
+ * a baggage item of a Brave span changes its context in place.
+ */
+final class InjectedHeaders {
+
+    private static final String[] NONE = new String[0];
+
+    private final WeakConcurrentMap<SpanContext, String[]> cache = new WeakConcurrentMap<>();
+    private final Tracer tracer;
+
+    /**
+     * @param tracer tracer injecting the headers
+     */
+    InjectedHeaders(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Inject the span context into the adapter, using the cached headers of the context if present.
+     *
+     * @param spanContext span context
+     * @param injectAdapter adapter
+     */
+    void inject(SpanContext spanContext, RequestBuilderInjectAdapter injectAdapter) {
+        String[] headers = cache.get(spanContext);
+        if (headers == null) {
+            Recorder recorder = new Recorder();
+            tracer.inject(spanContext, Format.Builtin.HTTP_HEADERS, recorder);
+            headers = recorder.headers();
+            cache.putIfAbsent(spanContext, headers);
+        }
+        for (int i = 0; i < headers.length; i += 2) {
+            injectAdapter.put(headers[i], headers[i + 1]);
+        }
+    }
+
+    /**
+     * @return number of cached span contexts
+     */
+    int size() {
+        return cache.size();
+    }
+
+    /**
+     * Records injected headers as alternating names and values.
+     */
+    private static class Recorder implements TextMap {
+        private List<String> headers;
+
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+            throw new UnsupportedOperationException("Should be used only with tracer#inject()");
+        }
+
+        @Override
+        public void put(String key, String value) {
+            if (headers == null) {
+                headers = new ArrayList<>(4);
+            }
+            headers.add(key);
+            headers.add(value);
+        }
+
+        String[] headers() {
+            return headers != null ? headers.toArray(new String[headers.size()]) : NONE;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache evicting least recently used entries. The cache is split into segments guarded by
+ * their own locks, eviction is done per segment.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class LruCache<K, V> {
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+
+    /**
+     * @param maxSize maximum number of entries, rounded up to a multiple of the number of segments
+     */
+    @SuppressWarnings("unchecked")
+    LruCache(int maxSize) {
+        int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(segmentSize);
+        }
+    }
+
+    V get(K key) {
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    void put(K key, V value) {
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment<K, V> segment: segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment<K, V> segment(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
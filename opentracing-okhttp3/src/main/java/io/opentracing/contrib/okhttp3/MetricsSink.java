@@ -0,0 +1,13 @@
+package io.opentracing.contrib.okhttp3;
+
+/**
+ * Sink of metrics reported by {@link HttpMetrics#report(MetricsSink)}, e.g. an adapter to a metrics library.
+ */
+public interface MetricsSink {
+
+    /**
+     * @param key host or route
+     * @param snapshot cumulative metrics of the key
+     */
+    void report(String key, HttpMetrics.Snapshot snapshot);
+}
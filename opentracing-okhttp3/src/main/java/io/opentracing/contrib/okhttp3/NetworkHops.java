@@ -0,0 +1,28 @@
+package io.opentracing.contrib.okhttp3;
+
+import okhttp3.Connection;
+
+/**
+ * Network hops of a call in single span mode. Interceptors of a call run one after another,
+ * therefore the state is not accessed concurrently.
+ */
+class NetworkHops {
+    private int count;
+    private Connection connection;
+
+    /**
+     * @param connection connection of the hop
+     * @return number of the hop starting with 1
+     */
+    int next(Connection connection) {
+        this.connection = connection;
+        return ++count;
+    }
+
+    /**
+     * @return connection of the last hop or null if no hop was made, e.g. the response was cached
+     */
+    Connection lastConnection() {
+        return connection;
+    }
+}
@@ -1,9 +1,6 @@
 package io.opentracing.contrib.okhttp3;
 
 import io.opentracing.Span;
-import java.net.Inet4Address;
-import java.net.InetAddress;
-import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -39,6 +36,9 @@ public interface OkHttpClientSpanDecorator {
      * This is invoked after {@link okhttp3.Interceptor.Chain#proceed(Request)} in network interceptor.
      * In this method it is possible to capture server address, log redirects etc.
      *
+     * <p>In single span mode it is invoked in the application interceptor with the final response and
+     * the connection of the last hop, the connection is null if no network request was made.
+     *
      * @param connection connection
      * @param response response
      * @param span span
@@ -51,6 +51,8 @@ public interface OkHttpClientSpanDecorator {
      * <p> On error it adds {@link Tags#ERROR} with log representing exception and
      * on redirects adds log entries with peer tags.
      *
+     * <p> Peer tags are taken from the route resolved by OkHttp, no reverse DNS lookup is done.
+     *
      */
     OkHttpClientSpanDecorator STANDARD_TAGS = new OkHttpClientSpanDecorator() {
         @Override
@@ -68,16 +70,9 @@ public interface OkHttpClientSpanDecorator {
 
         @Override
         public void onResponse(Connection connection, Response response, Span span) {
-            Tags.HTTP_STATUS.set(span, response.code());
-            InetAddress inetAddress = connection.socket().getInetAddress();
-            Tags.PEER_HOSTNAME.set(span, inetAddress.getHostName());
-            Tags.PEER_PORT.set(span, connection.socket().getPort());
-
-            if (inetAddress instanceof Inet4Address) {
-                byte[] address = inetAddress.getAddress();
-                Tags.PEER_HOST_IPV4.set(span, ByteBuffer.wrap(address).getInt());
-            } else {
-                Tags.PEER_HOST_IPV6.set(span, inetAddress.toString());
+            Tags.HTTP_STATUS.set(span, StatusCodes.valueOf(response.code()));
+            if (connection != null) {
+                ConnectionTags.of(connection).setPeer(span);
             }
         }
 
@@ -89,4 +84,51 @@ public interface OkHttpClientSpanDecorator {
             return errorLogs;
         }
     };
+
+    /**
+     * Decorator which adds connection identity tags: {@link OkHttpTags#CONNECTION_ID}, {@link OkHttpTags#PROTOCOL}
+     * and {@link OkHttpTags#CONNECTION_REUSED}. Values are cached per connection together with peer tags.
+     */
+    OkHttpClientSpanDecorator CONNECTION_TAGS = new OkHttpClientSpanDecorator() {
+        @Override
+        public void onRequest(Request request, Span span) {
+        }
+
+        @Override
+        public void onError(Throwable throwable, Span span) {
+        }
+
+        @Override
+        public void onResponse(Connection connection, Response response, Span span) {
+            if (connection != null) {
+                ConnectionTags.of(connection).setConnection(span);
+            }
+        }
+    };
+
+    /**
+     * Decorator which adds {@link OkHttpTags#CACHE} from {@link Response#cacheResponse()} and
+     * {@link Response#networkResponse()}. Only the final response of the call carries them, therefore it
+     * is meaningful for call spans, e.g. in single span mode. See also {@code withCacheTags}.
+     */
+    OkHttpClientSpanDecorator CACHE_TAGS = new OkHttpClientSpanDecorator() {
+        @Override
+        public void onRequest(Request request, Span span) {
+        }
+
+        @Override
+        public void onError(Throwable throwable, Span span) {
+        }
+
+        @Override
+        public void onResponse(Connection connection, Response response, Span span) {
+            if (response.cacheResponse() == null) {
+                OkHttpTags.CACHE.set(span, OkHttpTags.CACHE_MISS);
+            } else if (response.networkResponse() == null) {
+                OkHttpTags.CACHE.set(span, OkHttpTags.CACHE_HIT);
+            } else {
+                OkHttpTags.CACHE.set(span, OkHttpTags.CACHE_CONDITIONAL);
+            }
+        }
+    };
 }
@@ -0,0 +1,130 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import io.opentracing.tag.AbstractTag;
+import io.opentracing.tag.BooleanTag;
+import io.opentracing.tag.IntTag;
+import io.opentracing.tag.StringTag;
+
+/**
+ * Tags added by the instrumentation which are not defined in {@link io.opentracing.tag.Tags}.
+ */
+public final class OkHttpTags {
+
+    private OkHttpTags() {
+    }
+
+    /**
+     * Number of request body bytes sent.
+     */
+    public static final LongTag HTTP_REQUEST_SIZE = new LongTag("http.request_size");
+
+    /**
+     * Number of response body bytes received.
+     */
+    public static final LongTag HTTP_RESPONSE_SIZE = new LongTag("http.response_size");
+
+    /**
+     * Time from the start of the span until the last byte of the response body was read, in microseconds.
+     */
+    public static final LongTag HTTP_TIME_TO_LAST_BYTE = new LongTag("http.time_to_last_byte_micros");
+
+    /**
+     * Time an asynchronous call waited in the {@link okhttp3.Dispatcher} queue, in microseconds.
+     */
+    public static final LongTag QUEUE_WAIT = new LongTag("okhttp.queue_wait_micros");
+
+    /**
+     * Number of calls waiting in the {@link okhttp3.Dispatcher} queue when the call was enqueued, or when it was
+     * dispatched if it is known to be enqueued only then, see {@link TracingInterceptor#addTracing}.
+     */
+    public static final IntTag QUEUED_CALLS = new IntTag("okhttp.queued_calls");
+
+    /**
+     * Number of calls running in the {@link okhttp3.Dispatcher} when the call was enqueued, or when it was
+     * dispatched if it is known to be enqueued only then, see {@link TracingInterceptor#addTracing}.
+     */
+    public static final IntTag RUNNING_CALLS = new IntTag("okhttp.running_calls");
+
+    /**
+     * Identifier of the connection, unique within the JVM.
+     */
+    public static final LongTag CONNECTION_ID = new LongTag("okhttp.connection_id");
+
+    /**
+     * Protocol of the connection, e.g. {@code http/1.1} or {@code h2}.
+     */
+    public static final StringTag PROTOCOL = new StringTag("okhttp.protocol");
+
+    /**
+     * Whether a response was already received on the connection before.
+     */
+    public static final BooleanTag CONNECTION_REUSED = new BooleanTag("okhttp.connection_reused");
+
+    /**
+     * Reference to the span of establishing the connection, {@code traceId:spanId}. Set on spans of requests
+     * reusing the connection, the span of the request which established it references the span directly.
+     */
+    public static final StringTag CONNECTION_SPAN = new StringTag("okhttp.connection_span");
+
+    /**
+     * Cache outcome of the call: {@link #CACHE_HIT}, {@link #CACHE_CONDITIONAL} or {@link #CACHE_MISS}.
+     */
+    public static final StringTag CACHE = new StringTag("okhttp.cache");
+
+    /**
+     * The response was served from the cache without a network request.
+     */
+    public static final String CACHE_HIT = "hit";
+
+    /**
+     * The cached response was validated by a conditional network request.
+     */
+    public static final String CACHE_CONDITIONAL = "conditional";
+
+    /**
+     * The response was fetched from the network.
+     */
+    public static final String CACHE_MISS = "miss";
+
+    /**
+     * Number of calls of a fan-out, see {@link TracingCallFactory#executeAll(java.util.List)}.
+     */
+    public static final IntTag FAN_OUT_SIZE = new IntTag("okhttp.fan_out.size");
+
+    /**
+     * Number of failed calls of a fan-out.
+     */
+    public static final IntTag FAN_OUT_FAILURES = new IntTag("okhttp.fan_out.failures");
+
+    /**
+     * Index of the slowest call of a fan-out, the critical path.
+     */
+    public static final IntTag FAN_OUT_SLOWEST_INDEX = new IntTag("okhttp.fan_out.slowest_index");
+
+    /**
+     * Latency of the slowest call of a fan-out, in microseconds.
+     */
+    public static final LongTag FAN_OUT_SLOWEST_LATENCY = new LongTag("okhttp.fan_out.slowest_micros");
+
+    /**
+     * Number of headers dropped by the {@link PropagationBudget}.
+     */
+    public static final IntTag PROPAGATION_DROPPED = new IntTag("okhttp.propagation.dropped");
+
+    /**
+     * Number of header values truncated by the {@link PropagationBudget}.
+     */
+    public static final IntTag PROPAGATION_TRUNCATED = new IntTag("okhttp.propagation.truncated");
+
+    public static class LongTag extends AbstractTag<Long> {
+        public LongTag(String key) {
+            super(key);
+        }
+
+        @Override
+        public void set(Span span, Long tagValue) {
+            span.setTag(super.key, tagValue);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package io.opentracing.contrib.okhttp3;
+
+import okhttp3.Request;
+
+/**
+ * Strategy naming call and network spans.
+ */
+public interface OperationNameStrategy {
+
+    /**
+     * @param request request of the call or of the network hop
+     * @return operation name
+     */
+    String operationName(Request request);
+
+    /**
+     * Strategy using HTTP method as operation name.
+     */
+    OperationNameStrategy METHOD = new OperationNameStrategy() {
+        @Override
+        public String operationName(Request request) {
+            return request.method();
+        }
+    };
+}
@@ -0,0 +1,144 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable trie of values keyed by host and path prefix. A lookup walks the path once and does not lock.
+ *
+ * <p>A prefix matches a path if the path equals the prefix or continues with {@code /} after it, e.g.
+ * {@code /health} matches {@code /health/live} but not {@code /healthz}. A prefix ending with {@code /} matches
+ * every path starting with it. The longest matching prefix wins, values of the host take precedence over values
+ * of any host.
+ *
+ * @param <V> value type
+ */
+final class PrefixTrie<V> {
+    private final Map<String, Node<V>> hosts;
+    private final Node<V> anyHost;
+
+    private PrefixTrie(Map<String, Node<V>> hosts, Node<V> anyHost) {
+        this.hosts = hosts;
+        this.anyHost = anyHost;
+    }
+
+    /**
+     * @param host host
+     * @param path encoded path starting with {@code /}
+     * @return value of the longest matching prefix or null
+     */
+    V lookup(String host, String path) {
+        Node<V> hostRoot = hosts.get(host);
+        V value = hostRoot != null ? hostRoot.lookup(path) : null;
+        return value != null ? value : anyHost.lookup(path);
+    }
+
+    private static final class Node<V> {
+        private final char[] keys;
+        private final Node<V>[] children;
+        private final V value;
+
+        private Node(char[] keys, Node<V>[] children, V value) {
+            this.keys = keys;
+            this.children = children;
+            this.value = value;
+        }
+
+        private V lookup(String path) {
+            Node<V> node = this;
+            V match = null;
+            for (int i = 0; ; i++) {
+                if (node.value != null && (i == path.length() || path.charAt(i) == '/'
+                    || (i > 0 && path.charAt(i - 1) == '/'))) {
+                    match = node.value;
+                }
+                if (i == path.length()) {
+                    return match;
+                }
+                node = node.child(path.charAt(i));
+                if (node == null) {
+                    return match;
+                }
+            }
+        }
+
+        private Node<V> child(char c) {
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < c) {
+                    low = mid + 1;
+                } else if (keys[mid] > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+    }
+
+    static class Builder<V> {
+        private final Map<String, MutableNode<V>> hosts = new HashMap<>();
+        private final MutableNode<V> anyHost = new MutableNode<>();
+
+        /**
+         * @param host host or null for any host
+         * @param prefix path prefix
+         * @param value value
+         * @return builder
+         */
+        Builder<V> put(String host, String prefix, V value) {
+            MutableNode<V> node;
+            if (host == null) {
+                node = anyHost;
+            } else {
+                node = hosts.get(host.toLowerCase());
+                if (node == null) {
+                    node = new MutableNode<>();
+                    hosts.put(host.toLowerCase(), node);
+                }
+            }
+            String path = prefix.startsWith("/") ? prefix : "/" + prefix;
+            for (int i = 0; i < path.length(); i++) {
+                MutableNode<V> child = node.children.get(path.charAt(i));
+                if (child == null) {
+                    child = new MutableNode<>();
+                    node.children.put(path.charAt(i), child);
+                }
+                node = child;
+            }
+            node.value = value;
+            return this;
+        }
+
+        PrefixTrie<V> build() {
+            Map<String, Node<V>> hostRoots = new HashMap<>();
+            for (Map.Entry<String, MutableNode<V>> entry: hosts.entrySet()) {
+                hostRoots.put(entry.getKey(), entry.getValue().freeze());
+            }
+            return new PrefixTrie<>(Collections.unmodifiableMap(hostRoots), anyHost.freeze());
+        }
+    }
+
+    private static class MutableNode<V> {
+        private final TreeMap<Character, MutableNode<V>> children = new TreeMap<>();
+        private V value;
+
+        @SuppressWarnings("unchecked")
+        private Node<V> freeze() {
+            char[] keys = new char[children.size()];
+            Node<V>[] frozenChildren = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, MutableNode<V>> entry: children.entrySet()) {
+                keys[i] = entry.getKey();
+                frozenChildren[i] = entry.getValue().freeze();
+                i++;
+            }
+            return new Node<>(keys, frozenChildren, value);
+        }
+    }
+}
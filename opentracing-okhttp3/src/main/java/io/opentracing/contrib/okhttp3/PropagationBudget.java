@@ -0,0 +1,196 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits headers injected by the tracer into a request, e.g. to protect downstream services from large baggage
+ * added by an upstream service. Headers matching the {@link Builder#always(String)} list are always injected
+ * unchanged and do not count against the limits. Other headers are checked in the order the tracer injects them:
+ * <ul>
+ *     <li>headers not matching the allow list, if any, or matching the deny list are dropped</li>
+ *     <li>values longer than the maximum value length are truncated</li>
+ *     <li>headers over the maximum number of headers or bytes are dropped</li>
+ * </ul>
+ * Keys are matched ignoring case, a key ending with {@code *} matches all keys with the prefix. Bytes of a header
+ * are the length of its name and value. The allow list only filters headers, allowed headers are still truncated
+ * and dropped over the limits. Add the trace context headers to the always list, otherwise a small limit corrupts
+ * or drops them and breaks propagation.
+ *
+ * <p>Spans are tagged with {@link OkHttpTags#PROPAGATION_DROPPED} and {@link OkHttpTags#PROPAGATION_TRUNCATED}.
+ * Calls which are not traced have no span, their dropped headers are counted only by the budget.
+ *
+ * <pre>{@code
+ * PropagationBudget budget = new PropagationBudget.Builder()
+ *     .withMaxHeaders(8)
+ *     .withMaxBytes(1024)
+ *     .always("uber-trace-id")
+ *     .deny("uberctx-*")
+ *     .build();
+ * }</pre>
+ */
+public class PropagationBudget {
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final int maxHeaders;
+    private final int maxBytes;
+    private final int maxValueLength;
+    private final String[] allowed;
+    private final String[] denied;
+    private final String[] always;
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder truncatedCount = new LongAdder();
+
+    private PropagationBudget(Builder builder) {
+        this.maxHeaders = builder.maxHeaders;
+        this.maxBytes = builder.maxBytes;
+        this.maxValueLength = builder.maxValueLength;
+        this.allowed = builder.allowed.toArray(new String[0]);
+        this.denied = builder.denied.toArray(new String[0]);
+        this.always = builder.always.toArray(new String[0]);
+    }
+
+    /**
+     * @return number of headers which were dropped
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return number of header values which were truncated
+     */
+    public long getTruncatedCount() {
+        return truncatedCount.sum();
+    }
+
+    int maxHeaders() {
+        return maxHeaders;
+    }
+
+    int maxBytes() {
+        return maxBytes;
+    }
+
+    int maxValueLength() {
+        return maxValueLength;
+    }
+
+    boolean isAlways(String key) {
+        return matches(always, key);
+    }
+
+    boolean isAllowed(String key) {
+        return (allowed.length == 0 || matches(allowed, key)) && !matches(denied, key);
+    }
+
+    void record(int dropped, int truncated) {
+        if (dropped > 0) {
+            droppedCount.add(dropped);
+        }
+        if (truncated > 0) {
+            truncatedCount.add(truncated);
+        }
+    }
+
+    private static boolean matches(String[] patterns, String key) {
+        for (String pattern: patterns) {
+            if (pattern.endsWith("*")) {
+                if (key.regionMatches(true, 0, pattern, 0, pattern.length() - 1)) {
+                    return true;
+                }
+            } else if (key.equalsIgnoreCase(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builder of {@link PropagationBudget}, all limits are {@link #UNLIMITED} by default.
+     */
+    public static class Builder {
+        private int maxHeaders = UNLIMITED;
+        private int maxBytes = UNLIMITED;
+        private int maxValueLength = UNLIMITED;
+        private final List<String> allowed = new ArrayList<>();
+        private final List<String> denied = new ArrayList<>();
+        private final List<String> always = new ArrayList<>();
+
+        /**
+         * @param maxHeaders maximum number of injected headers
+         * @return builder
+         */
+        public Builder withMaxHeaders(int maxHeaders) {
+            if (maxHeaders < 0) {
+                throw new IllegalArgumentException("maxHeaders must not be negative");
+            }
+            this.maxHeaders = maxHeaders;
+            return this;
+        }
+
+        /**
+         * @param maxBytes maximum number of bytes of injected header names and values
+         * @return builder
+         */
+        public Builder withMaxBytes(int maxBytes) {
+            if (maxBytes < 0) {
+                throw new IllegalArgumentException("maxBytes must not be negative");
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param maxValueLength maximum length of a header value, longer values are truncated
+         * @return builder
+         */
+        public Builder withMaxValueLength(int maxValueLength) {
+            if (maxValueLength < 0) {
+                throw new IllegalArgumentException("maxValueLength must not be negative");
+            }
+            this.maxValueLength = maxValueLength;
+            return this;
+        }
+
+        /**
+         * Inject only headers matching allowed keys. All keys are allowed if none is added. Allowed headers are
+         * still truncated and dropped over the limits, see {@link #always(String)}.
+         *
+         * @param key header name or prefix ending with {@code *}
+         * @return builder
+         */
+        public Builder allow(String key) {
+            allowed.add(key);
+            return this;
+        }
+
+        /**
+         * Never inject headers matching the key.
+         *
+         * @param key header name or prefix ending with {@code *}
+         * @return builder
+         */
+        public Builder deny(String key) {
+            denied.add(key);
+            return this;
+        }
+
+        /**
+         * Always inject headers matching the key unchanged, e.g. the trace context. They are never truncated,
+         * dropped or counted against the limits, also if they match the deny list.
+         *
+         * @param key header name or prefix ending with {@code *}
+         * @return builder
+         */
+        public Builder always(String key) {
+            always.add(key);
+            return this;
+        }
+
+        public PropagationBudget build() {
+            return new PropagationBudget(this);
+        }
+    }
+}
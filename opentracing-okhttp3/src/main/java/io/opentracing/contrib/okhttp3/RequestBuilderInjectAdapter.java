@@ -3,20 +3,77 @@ package io.opentracing.contrib.okhttp3;
 import java.util.Iterator;
 import java.util.Map;
 
+import io.opentracing.Span;
 import io.opentracing.propagation.TextMap;
 import okhttp3.Request;
 
 /**
- * Helper class to inject span context into request headers.
+ * Helper class to inject span context into request headers. Injected headers replace headers of the same name,
+ * so a request carrying headers of a previous attempt does not propagate two contexts. Headers can be limited
+ * by a {@link PropagationBudget}.
  *
  * @author Pavol Loffay
  */
 public class RequestBuilderInjectAdapter implements TextMap {
 
+    private Request request;
     private Request.Builder requestBuilder;
+    private final PropagationBudget budget;
+    private int headers;
+    private long bytes;
+    private int dropped;
+    private int truncated;
 
     public RequestBuilderInjectAdapter(Request.Builder request) {
+        this(request, null);
+    }
+
+    /**
+     * @param request request builder
+     * @param budget budget of injected headers, can be null
+     */
+    public RequestBuilderInjectAdapter(Request.Builder request, PropagationBudget budget) {
         this.requestBuilder = request;
+        this.budget = budget;
+    }
+
+    /**
+     * Create adapter which creates the request builder only if a header is injected and the request does not
+     * already carry the same value.
+     *
+     * @param request request
+     * @param budget budget of injected headers, can be null
+     */
+    RequestBuilderInjectAdapter(Request request, PropagationBudget budget) {
+        this.request = request;
+        this.budget = budget;
+    }
+
+    /**
+     * @return request with injected headers or the original request if nothing was injected
+     */
+    Request request() {
+        return requestBuilder != null ? requestBuilder.build() : request;
+    }
+
+    /**
+     * Count headers dropped or truncated by the budget on the span and the budget. Invoke once after injecting.
+     *
+     * @param span span or null if the call is not traced
+     */
+    public void recordBudget(Span span) {
+        if (budget == null || (dropped == 0 && truncated == 0)) {
+            return;
+        }
+        budget.record(dropped, truncated);
+        if (span != null) {
+            if (dropped > 0) {
+                OkHttpTags.PROPAGATION_DROPPED.set(span, dropped);
+            }
+            if (truncated > 0) {
+                OkHttpTags.PROPAGATION_TRUNCATED.set(span, truncated);
+            }
+        }
     }
 
     @Override
@@ -26,6 +83,29 @@ public class RequestBuilderInjectAdapter implements TextMap {
 
     @Override
     public void put(String key, String value) {
-        requestBuilder.addHeader(key, value);
+        if (budget != null && !budget.isAlways(key)) {
+            if (!budget.isAllowed(key) || headers >= budget.maxHeaders()) {
+                dropped++;
+                return;
+            }
+            if (value.length() > budget.maxValueLength()) {
+                value = value.substring(0, budget.maxValueLength());
+                truncated++;
+            }
+            long headerBytes = key.length() + value.length();
+            if (bytes + headerBytes > budget.maxBytes()) {
+                dropped++;
+                return;
+            }
+            headers++;
+            bytes += headerBytes;
+        }
+        if (requestBuilder == null) {
+            if (value.equals(request.header(key)) && request.headers(key).size() == 1) {
+                return;
+            }
+            requestBuilder = request.newBuilder();
+        }
+        requestBuilder.header(key, value);
     }
 }
@@ -0,0 +1,28 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import io.opentracing.noop.NoopSpan;
+
+/**
+ * Decides whether a span is sampled. Spans which are not sampled are not decorated and network spans are not
+ * created for them, only the span context is propagated. OpenTracing API does not expose the sampling decision,
+ * therefore a tracer specific predicate can be supplied, e.g. checking the sampled flag of the span context.
+ */
+public interface SampledSpanPredicate {
+
+    /**
+     * @param span started span
+     * @return whether the span is sampled
+     */
+    boolean isSampled(Span span);
+
+    /**
+     * Predicate which considers all spans except no-op spans sampled.
+     */
+    SampledSpanPredicate NOT_NOOP = new SampledSpanPredicate() {
+        @Override
+        public boolean isSampled(Span span) {
+            return !(span instanceof NoopSpan);
+        }
+    };
+}
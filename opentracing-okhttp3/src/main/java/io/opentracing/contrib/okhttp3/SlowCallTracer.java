@@ -0,0 +1,402 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopSpan;
+import io.opentracing.propagation.Format;
+import io.opentracing.tag.Tag;
+import io.opentracing.tag.Tags;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracer keeping only spans which are slower than a threshold, which are tagged with {@link Tags#ERROR} or
+ * a 5xx {@link Tags#HTTP_STATUS}, or whose child started by this tracer was kept. Tags and logs are buffered
+ * and passed to the delegate span only when the span is kept.
+ *
+ * <p>Spans are started by the delegate tracer when they are started by this tracer: their context is injected into
+ * the request and parents the network span before it is known whether the call is slow. Spans which are not kept
+ * are finished without tags and logs and with {@link Tags#SAMPLING_PRIORITY} 0, which asks the delegate tracer not to
+ * report them. Durations and timestamps of logs are measured by {@link System#nanoTime()} relative to the start
+ * of the span.
+ *
+ * <p>Spans started by the delegate tracer are activated in its scope manager, which therefore never sees buffered
+ * spans. Active spans are mapped back to buffered spans while they are not finished.
+ */
+final class SlowCallTracer implements Tracer {
+    private final Tracer delegate;
+    private final long thresholdMicros;
+    private final BufferedScopeManager scopeManager;
+
+    /**
+     * @param delegate tracer
+     * @param thresholdMicros spans with duration greater or equal to the threshold are kept
+     */
+    SlowCallTracer(Tracer delegate, long thresholdMicros) {
+        this.delegate = delegate;
+        this.thresholdMicros = thresholdMicros;
+        this.scopeManager = new BufferedScopeManager(delegate.scopeManager());
+    }
+
+    /**
+     * @param span span
+     * @return span started by the delegate tracer
+     */
+    static Span unwrap(Span span) {
+        return span instanceof BufferedSpan ? ((BufferedSpan) span).delegate : span;
+    }
+
+    @Override
+    public ScopeManager scopeManager() {
+        return scopeManager;
+    }
+
+    @Override
+    public Span activeSpan() {
+        return scopeManager.activeSpan();
+    }
+
+    @Override
+    public Scope activateSpan(Span span) {
+        return scopeManager.activate(span);
+    }
+
+    @Override
+    public SpanBuilder buildSpan(String operationName) {
+        return new BufferedSpanBuilder(delegate.buildSpan(operationName));
+    }
+
+    @Override
+    public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
+        delegate.inject(spanContext, format, carrier);
+    }
+
+    @Override
+    public <C> SpanContext extract(Format<C> format, C carrier) {
+        return delegate.extract(format, carrier);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * Scope manager activating spans started by the delegate tracer in the delegate scope manager.
+     */
+    static final class BufferedScopeManager implements ScopeManager {
+        private final ScopeManager delegate;
+        /**
+         * Buffered spans by their activated delegate span, removed when they are finished.
+         */
+        private final WeakConcurrentMap<Span, BufferedSpan> activated = new WeakConcurrentMap<>();
+
+        BufferedScopeManager(ScopeManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Scope activate(Span span) {
+            if (span instanceof BufferedSpan) {
+                ((BufferedSpan) span).activate();
+            }
+            return delegate.activate(unwrap(span));
+        }
+
+        @Override
+        public Span activeSpan() {
+            Span span = delegate.activeSpan();
+            if (span == null) {
+                return null;
+            }
+            BufferedSpan bufferedSpan = activated.get(span);
+            return bufferedSpan != null ? bufferedSpan : span;
+        }
+
+    }
+
+    private class BufferedSpanBuilder implements SpanBuilder {
+        private final SpanBuilder delegate;
+        private BufferedSpan parent;
+        private boolean explicitParent;
+        private long startMicros;
+
+        BufferedSpanBuilder(SpanBuilder delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public SpanBuilder asChildOf(SpanContext parent) {
+            explicitParent |= parent != null;
+            delegate.asChildOf(parent);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder asChildOf(Span parent) {
+            this.parent = parent instanceof BufferedSpan ? (BufferedSpan) parent : null;
+            explicitParent |= parent != null;
+            delegate.asChildOf(unwrap(parent));
+            return this;
+        }
+
+        @Override
+        public SpanBuilder addReference(String referenceType, SpanContext referencedContext) {
+            explicitParent |= referencedContext != null;
+            delegate.addReference(referenceType, referencedContext);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder ignoreActiveSpan() {
+            explicitParent = true;
+            delegate.ignoreActiveSpan();
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, String value) {
+            delegate.withTag(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, boolean value) {
+            delegate.withTag(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, Number value) {
+            delegate.withTag(key, value);
+            return this;
+        }
+
+        @Override
+        public <T> SpanBuilder withTag(Tag<T> tag, T value) {
+            delegate.withTag(tag, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withStartTimestamp(long microseconds) {
+            startMicros = microseconds;
+            return this;
+        }
+
+        @Override
+        public Span start() {
+            long startNanos = System.nanoTime();
+            long startMicros = this.startMicros != 0
+                ? this.startMicros : TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+            if (!explicitParent) {
+                // the delegate tracer uses the active span as parent
+                Span activeSpan = scopeManager.activeSpan();
+                parent = activeSpan instanceof BufferedSpan ? (BufferedSpan) activeSpan : null;
+            }
+            Span span = delegate.withStartTimestamp(startMicros).start();
+            return span instanceof NoopSpan
+                ? span : new BufferedSpan(span, parent, scopeManager, startMicros, startNanos, thresholdMicros);
+        }
+    }
+
+    /**
+     * Span buffering tags and logs until it is finished.
+     */
+    static final class BufferedSpan implements Span {
+        private final Span delegate;
+        /**
+         * Parent span started by the same tracer or null.
+         */
+        private final BufferedSpan parent;
+        private final BufferedScopeManager scopeManager;
+        private final long startMicros;
+        private final long startNanos;
+        private final long thresholdMicros;
+        /**
+         * Keys (String or {@link Tag}) and values of tags.
+         */
+        private final List<Object> tags = new ArrayList<>(16);
+        /**
+         * Timestamps and fields (Map or String) of logs, null until the first log.
+         */
+        private List<Object> logs;
+        private boolean error;
+        private boolean serverError;
+        private boolean childKept;
+        private boolean activated;
+        private boolean finished;
+
+        BufferedSpan(Span delegate, BufferedSpan parent, BufferedScopeManager scopeManager, long startMicros,
+                long startNanos, long thresholdMicros) {
+            this.delegate = delegate;
+            this.parent = parent;
+            this.scopeManager = scopeManager;
+            this.startMicros = startMicros;
+            this.startNanos = startNanos;
+            this.thresholdMicros = thresholdMicros;
+        }
+
+        private long nowMicros() {
+            return startMicros + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public SpanContext context() {
+            return delegate.context();
+        }
+
+        private synchronized Span tag(Object key, String keyName, Object value) {
+            if (!finished) {
+                tags.add(key);
+                tags.add(value);
+                if (Tags.ERROR.getKey().equals(keyName)) {
+                    error = Boolean.TRUE.equals(value);
+                } else if (Tags.HTTP_STATUS.getKey().equals(keyName)) {
+                    serverError = value instanceof Number && ((Number) value).intValue() >= 500;
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public Span setTag(String key, String value) {
+            return tag(key, key, value);
+        }
+
+        @Override
+        public Span setTag(String key, boolean value) {
+            return tag(key, key, value);
+        }
+
+        @Override
+        public Span setTag(String key, Number value) {
+            return tag(key, key, value);
+        }
+
+        @Override
+        public <T> Span setTag(Tag<T> tag, T value) {
+            return tag(tag, tag.getKey(), value);
+        }
+
+        private synchronized Span log(long timestampMicros, Object fields) {
+            if (!finished) {
+                if (logs == null) {
+                    logs = new ArrayList<>(8);
+                }
+                logs.add(timestampMicros);
+                logs.add(fields);
+            }
+            return this;
+        }
+
+        @Override
+        public Span log(Map<String, ?> fields) {
+            return log(nowMicros(), fields);
+        }
+
+        @Override
+        public Span log(long timestampMicroseconds, Map<String, ?> fields) {
+            return log(timestampMicroseconds, (Object) fields);
+        }
+
+        @Override
+        public Span log(String event) {
+            return log(nowMicros(), event);
+        }
+
+        @Override
+        public Span log(long timestampMicroseconds, String event) {
+            return log(timestampMicroseconds, (Object) event);
+        }
+
+        @Override
+        public Span setBaggageItem(String key, String value) {
+            delegate.setBaggageItem(key, value);
+            return this;
+        }
+
+        @Override
+        public String getBaggageItem(String key) {
+            return delegate.getBaggageItem(key);
+        }
+
+        @Override
+        public Span setOperationName(String operationName) {
+            delegate.setOperationName(operationName);
+            return this;
+        }
+
+        @Override
+        public void finish() {
+            finish(nowMicros());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized void finish(long finishMicros) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (activated) {
+                scopeManager.activated.remove(delegate);
+            }
+            if (!error && !serverError && !childKept && finishMicros - startMicros < thresholdMicros) {
+                Tags.SAMPLING_PRIORITY.set(delegate, 0);
+                delegate.finish(finishMicros);
+                return;
+            }
+            if (parent != null) {
+                parent.keep();
+            }
+            for (int i = 0; i < tags.size(); i += 2) {
+                Object key = tags.get(i);
+                Object value = tags.get(i + 1);
+                if (key instanceof Tag) {
+                    ((Tag<Object>) key).set(delegate, value);
+                } else if (value instanceof String) {
+                    delegate.setTag((String) key, (String) value);
+                } else if (value instanceof Boolean) {
+                    delegate.setTag((String) key, (Boolean) value);
+                } else {
+                    delegate.setTag((String) key, (Number) value);
+                }
+            }
+            if (logs != null) {
+                for (int i = 0; i < logs.size(); i += 2) {
+                    long timestampMicros = (Long) logs.get(i);
+                    Object fields = logs.get(i + 1);
+                    if (fields instanceof String) {
+                        delegate.log(timestampMicros, (String) fields);
+                    } else {
+                        delegate.log(timestampMicros, (Map<String, ?>) fields);
+                    }
+                }
+            }
+            delegate.finish(finishMicros);
+        }
+
+        /**
+         * Map the delegate span to this span until it is finished, the map references the delegate span strongly.
+         */
+        private synchronized void activate() {
+            if (!activated && !finished) {
+                activated = true;
+                scopeManager.activated.put(delegate, this);
+            }
+        }
+
+        /**
+         * Keep the span because its child was kept, no effect if the span is already finished.
+         */
+        private synchronized void keep() {
+            childKept = true;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package io.opentracing.contrib.okhttp3;
+
+/**
+ * Boxed HTTP status codes shared by all spans, {@link Integer#valueOf(int)} caches only values up to 127.
+ */
+final class StatusCodes {
+    private static final int MIN = 100;
+    private static final Integer[] CODES = new Integer[600 - MIN];
+
+    static {
+        for (int i = 0; i < CODES.length; i++) {
+            CODES[i] = MIN + i;
+        }
+    }
+
+    private StatusCodes() {
+    }
+
+    static Integer valueOf(int code) {
+        return code >= MIN && code < MIN + CODES.length ? CODES[code - MIN] : Integer.valueOf(code);
+    }
+}
@@ -1,6 +1,7 @@
 package io.opentracing.contrib.okhttp3;
 
 import io.opentracing.Span;
+import io.opentracing.SpanContext;
 
 /**
  * Tag wrapper to store parent span context and user defined tags.
@@ -9,6 +10,10 @@ import io.opentracing.Span;
  */
 public class TagWrapper {
     private Span span;
+    private DeferredSpan deferredSpan;
+    private TracingOptions options;
+    private NetworkHops hops;
+    private SpanContext propagatedContext;
 
     private Object tag;
 
@@ -22,9 +27,37 @@ public class TagWrapper {
     /**
      * @param wrapper previous wrapper
      * @param span span
+     * @param options options of the call route
+     * @param hops network hops of the call in single span mode or null
      */
-    TagWrapper(TagWrapper wrapper, Span span) {
+    TagWrapper(TagWrapper wrapper, Span span, TracingOptions options, NetworkHops hops) {
         this.span = span;
+        this.options = options;
+        this.hops = hops;
+        this.tag = wrapper.tag;
+    }
+
+    /**
+     * @param wrapper previous wrapper
+     * @param deferredSpan call span started when the call reaches the network
+     * @param options options of the call route
+     * @param hops network hops of the call in single span mode or null
+     */
+    TagWrapper(TagWrapper wrapper, DeferredSpan deferredSpan, TracingOptions options, NetworkHops hops) {
+        this.deferredSpan = deferredSpan;
+        this.options = options;
+        this.hops = hops;
+        this.tag = wrapper.tag;
+    }
+
+    /**
+     * @param wrapper previous wrapper
+     * @param propagatedContext context propagated by a call which is not traced
+     * @param options options of the call route
+     */
+    TagWrapper(TagWrapper wrapper, SpanContext propagatedContext, TracingOptions options) {
+        this.propagatedContext = propagatedContext;
+        this.options = options;
         this.tag = wrapper.tag;
     }
 
@@ -35,4 +68,20 @@ public class TagWrapper {
     Span getSpan() {
         return span;
     }
+
+    DeferredSpan getDeferredSpan() {
+        return deferredSpan;
+    }
+
+    TracingOptions getOptions() {
+        return options;
+    }
+
+    NetworkHops getHops() {
+        return hops;
+    }
+
+    SpanContext getPropagatedContext() {
+        return propagatedContext;
+    }
 }
@@ -5,111 +5,921 @@ import io.opentracing.Span;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 import io.opentracing.SpanContext;
+import io.opentracing.References;
 import io.opentracing.Tracer;
+import io.opentracing.noop.NoopSpan;
 import io.opentracing.propagation.Format;
 import io.opentracing.tag.Tags;
 import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.EventListener;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.RequestBody;
 import okhttp3.Response;
 
 /**
  * OkHttp client instrumentation.
  *
+ * <p>By default a client with tracing interceptors is built for every call. Use {@link Builder#withSharedClient(boolean)}
+ * to build the instrumented client only once, the span is then passed to the interceptors in {@link TagWrapper}
+ * set as a request tag.
+ *
+ * <p>Spans which are not sampled, see {@link Builder#withSampledSpanPredicate(SampledSpanPredicate)},
+ * are only propagated. Calls of a no-op tracer are not instrumented at all.
+ *
  * @author Pavol Loffay
  */
 public class TracingCallFactory implements Call.Factory {
     static final String COMPONENT_NAME = "okhttp";
+    /**
+     * Event logged on the call span for every network hop after the first one in single span mode.
+     */
+    static final String NETWORK_HOP = "network.hop";
 
     private OkHttpClient okHttpClient;
+    /**
+     * Instrumented client built once, null if a new client is built for every call.
+     */
+    private OkHttpClient tracingClient;
+    /**
+     * Instrumented client passing spans in request tags used for batches if a new client is built for every call.
+     */
+    private volatile OkHttpClient batchClient;
 
-    private Tracer tracer;
-    private List<OkHttpClientSpanDecorator> decorators;
+    private TracingOptions options;
+    /**
+     * Tracker of call starts, null if dispatcher tags are disabled.
+     */
+    private CallStartTracker callStartTracker;
+    private EventListener.Factory eventListenerFactory;
 
     public TracingCallFactory(OkHttpClient okHttpClient, Tracer tracer) {
         this(okHttpClient, tracer, Collections.singletonList(OkHttpClientSpanDecorator.STANDARD_TAGS));
     }
 
     public TracingCallFactory(OkHttpClient okHttpClient, Tracer tracer, List<OkHttpClientSpanDecorator> decorators) {
-        this.okHttpClient = okHttpClient;
-        this.tracer = tracer;
-        this.decorators = new ArrayList<>(decorators);
+        this(new Builder(okHttpClient, tracer)
+            .withDecorators(decorators));
+    }
+
+    private TracingCallFactory(Builder builder) {
+        this.okHttpClient = builder.okHttpClient;
+        this.options = new TracingOptions(builder);
+        EventListener.Factory listenerFactory = okHttpClient.eventListenerFactory();
+        options.eventListeners.add(listenerFactory);
+        if (options.connectionSpans) {
+            listenerFactory = new ConnectionSpanListener.Factory(options, listenerFactory);
+            this.eventListenerFactory = listenerFactory;
+        }
+        if (options.dispatcherTags) {
+            this.callStartTracker = new CallStartTracker(options.tracer, false, true);
+            this.eventListenerFactory = callStartTracker.eventListenerFactory(listenerFactory,
+                okHttpClient.dispatcher());
+        }
+
+        if (builder.sharedClient) {
+            this.tracingClient = newTracingClient();
+        }
+    }
+
+    /**
+     * Build client passing spans to interceptors in request tags.
+     */
+    private OkHttpClient newTracingClient() {
+        OkHttpClient.Builder okBuilder = newClientBuilder();
+        okBuilder.networkInterceptors().add(0, new NetworkInterceptor(null, null, options, null));
+        okBuilder.interceptors().add(0, new CallInterceptor(null, null, options, null, callStartTracker));
+        return okBuilder.build();
+    }
+
+    private OkHttpClient batchClient() {
+        if (tracingClient != null) {
+            return tracingClient;
+        }
+        OkHttpClient client = batchClient;
+        if (client == null) {
+            synchronized (this) {
+                client = batchClient;
+                if (client == null) {
+                    client = newTracingClient();
+                    batchClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    private OkHttpClient.Builder newClientBuilder() {
+        OkHttpClient.Builder okBuilder = okHttpClient.newBuilder();
+        if (eventListenerFactory != null) {
+            okBuilder.eventListenerFactory(eventListenerFactory);
+        }
+        return okBuilder;
     }
 
     @Override
-    public Call newCall(final Request request) {
-        final Span span = tracer.buildSpan(request.method())
-            .withTag(Tags.COMPONENT.getKey(), COMPONENT_NAME)
-            .start();
+    public Call newCall(Request request) {
+        return track(newCall(request, null, tracingClient));
+    }
+
+    /**
+     * Execute the call asynchronously. The future is completed on the {@link okhttp3.Dispatcher} thread
+     * with the call span active, therefore the span is active in dependent stages added before
+     * the completion. Stages added after the completion run on the thread adding them. If the call
+     * is not traced, the span active when this method is invoked is activated instead.
+     *
+     * <p>Cancelling the future cancels the call.
+     *
+     * @param request request
+     * @return future of the response, the response has to be closed
+     */
+    public CompletableFuture<Response> executeAsync(Request request) {
+        FutureCallback callback = new FutureCallback(options.tracer);
+        final Call call = track(newCall(request, callback, tracingClient));
+        callback.future.whenComplete(new BiConsumer<Response, Throwable>() {
+            @Override
+            public void accept(Response response, Throwable throwable) {
+                if (throwable instanceof CancellationException) {
+                    call.cancel();
+                }
+            }
+        });
+        call.enqueue(callback);
+        return callback.future;
+    }
+
+    /**
+     * Execute calls concurrently under one fan-out span. The fan-out span is a child of the active span and
+     * parent of the call spans. It records latency and failure of every call, the slowest call and the number
+     * of failures. Calls of the batch share one instrumented client which passes spans in {@link TagWrapper}
+     * request tags, see {@link Builder#withSharedClient(boolean)}.
+     *
+     * <p>The future is completed with the fan-out span active when all calls are completed. Cancelling
+     * the future cancels all calls. If creating a call fails, e.g. a decorator throws, no call is executed,
+     * spans of the created calls and the fan-out span are finished with an error and the future is completed
+     * exceptionally.
+     *
+     * @param requests requests
+     * @return future of results of all calls, responses have to be closed
+     */
+    public CompletableFuture<FanOutResult> executeAll(List<Request> requests) {
+        FanOut fanOut = new FanOut(options.tracer, requests);
+        OkHttpClient client = batchClient();
+        final List<Call> calls = new ArrayList<>(requests.size());
+        try (Scope scope = options.tracer.activateSpan(fanOut.span)) {
+            for (Request request: requests) {
+                calls.add(track(newCall(request, null, client)));
+            }
+        } catch (RuntimeException ex) {
+            for (Call call: calls) {
+                abandon(call, ex);
+            }
+            fanOut.fail(ex);
+            return fanOut.future;
+        }
+        fanOut.future.whenComplete(new BiConsumer<FanOutResult, Throwable>() {
+            @Override
+            public void accept(FanOutResult result, Throwable throwable) {
+                if (throwable instanceof CancellationException) {
+                    for (Call call: calls) {
+                        call.cancel();
+                    }
+                }
+            }
+        });
+        for (int i = 0; i < calls.size(); i++) {
+            calls.get(i).enqueue(fanOut.member(i));
+        }
+        return fanOut.future;
+    }
+
+    /**
+     * Finish the span of a call created by the batch client which is never executed.
+     *
+     * @param call call
+     * @param error failure aborting the call
+     */
+    private void abandon(Call call, RuntimeException error) {
+        Request request = call.request();
+        TracingOptions options = taggedOptions(request, this.options);
+        options.eventListeners.discard(call);
+        DeferredSpan deferredSpan = taggedDeferredSpan(request);
+        Span span = deferredSpan != null ? deferredSpan.start() : taggedSpan(request);
+        if (span == null) {
+            // not traced
+            return;
+        }
+        if (options.sampledSpanPredicate.isSampled(span)) {
+            for (OkHttpClientSpanDecorator spanDecorator: options.decorators) {
+                spanDecorator.onError(error, span);
+            }
+        }
+        span.finish();
+    }
+
+    /**
+     * @return call recording when it is enqueued if dispatcher tags are enabled
+     */
+    private Call track(Call call) {
+        return callStartTracker != null ? callStartTracker.track(call) : call;
+    }
+
+    /**
+     * @param callback callback of an async call to which the call span is passed or null
+     * @param tracingClient client passing spans in request tags or null to build a client for the call
+     */
+    private Call newCall(final Request request, FutureCallback callback, OkHttpClient tracingClient) {
+        TracingOptions options = this.options.route(request.url());
+        if (!options.traced) {
+            return untracedCall(request, options, null, tracingClient);
+        }
+        if (!options.tryAcquire(request.url())) {
+            // not traced but propagates context of the active span
+            Span activeSpan = options.tracer.activeSpan();
+            return untracedCall(request, options, activeSpan != null ? activeSpan.context() : null, tracingClient);
+        }
+        Tracer.SpanBuilder spanBuilder = options.tracer
+            .buildSpan(options.operationNameStrategy.operationName(request))
+            .withTag(Tags.COMPONENT.getKey(), COMPONENT_NAME);
+        if (options.singleSpan) {
+            spanBuilder.withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT);
+        }
+        if (!options.cacheHitSpans) {
+            return deferredCall(request, spanBuilder, options, callback, tracingClient);
+        }
+        final Span span = spanBuilder.start();
+        if (span instanceof NoopSpan) {
+            // nothing to finish or propagate
+            return untracedCall(request, options, null, tracingClient);
+        }
+        if (callback != null) {
+            callback.span = span;
+        }
+        NetworkHops hops = options.singleSpan ? new NetworkHops() : null;
         try {
+            if (tracingClient != null) {
+                Object tag = request.tag();
+                TagWrapper tagWrapper = tag instanceof TagWrapper
+                    ? (TagWrapper) tag : new TagWrapper(tag);
+                return tracingClient.newCall(request.newBuilder()
+                    .tag(new TagWrapper(tagWrapper, span, options, hops))
+                    .build());
+            }
+
             /**
              * In case of exception network interceptor is not called
              */
-            OkHttpClient.Builder okBuilder = okHttpClient.newBuilder();
-            okBuilder.networkInterceptors().add(0, new NetworkInterceptor(tracer, span.context(), decorators));
-
-            okBuilder.interceptors().add(0, new Interceptor() {
-                @Override
-                public Response intercept(Chain chain) throws IOException {
-                    try (Scope activeInterceptorSpan = tracer.activateSpan(span)) {
-                        return chain.proceed(chain.request());
-                    } catch (Exception ex) {
-                        for (OkHttpClientSpanDecorator spanDecorator : decorators) {
-                            spanDecorator.onError(ex, span);
-                        }
-                        throw ex;
-                    } finally {
-                        span.finish();
-                    }
-                }
-            });
+            OkHttpClient.Builder okBuilder = newClientBuilder();
+            okBuilder.networkInterceptors().add(0, new NetworkInterceptor(span, null, options, hops));
+            okBuilder.interceptors().add(0, new CallInterceptor(span, null, options, hops, callStartTracker));
             return okBuilder.build().newCall(request);
         } catch (Exception ex) {
-            for (OkHttpClientSpanDecorator spanDecorator: decorators) {
+            for (OkHttpClientSpanDecorator spanDecorator: options.decorators) {
                 spanDecorator.onError(ex, span);
             }
             throw ex;
         }
     }
 
-    static class NetworkInterceptor implements Interceptor {
-        public SpanContext parentContext;
-        public Tracer tracer;
-        public List<OkHttpClientSpanDecorator> decorators;
+    /**
+     * Create call whose span is started only when the call reaches the network or fails.
+     */
+    private Call deferredCall(Request request, Tracer.SpanBuilder spanBuilder, TracingOptions options,
+        FutureCallback callback, OkHttpClient tracingClient) {
+        Span activeSpan = options.tracer.activeSpan();
+        if (activeSpan != null) {
+            spanBuilder.asChildOf(activeSpan);
+        } else {
+            spanBuilder.ignoreActiveSpan();
+        }
+        DeferredSpan deferredSpan = new DeferredSpan(spanBuilder, options.sampledSpanPredicate);
+        if (callback != null) {
+            callback.deferredSpan = deferredSpan;
+        }
+        NetworkHops hops = options.singleSpan ? new NetworkHops() : null;
+        if (tracingClient != null) {
+            Object tag = request.tag();
+            TagWrapper tagWrapper = tag instanceof TagWrapper
+                ? (TagWrapper) tag : new TagWrapper(tag);
+            return tracingClient.newCall(request.newBuilder()
+                .tag(new TagWrapper(tagWrapper, deferredSpan, options, hops))
+                .build());
+        }
+        OkHttpClient.Builder okBuilder = newClientBuilder();
+        okBuilder.networkInterceptors().add(0, new NetworkInterceptor(null, deferredSpan, options, hops));
+        okBuilder.interceptors().add(0, new CallInterceptor(null, deferredSpan, options, hops, callStartTracker));
+        return okBuilder.build().newCall(request);
+    }
+
+    /**
+     * Create call which is not traced. The call interceptor measures it only if metrics are enabled.
+     * Phases of the call are not recorded, it has no span to report them to.
+     *
+     * @param options options of the call route
+     * @param propagatedContext context propagated by the call or null
+     * @param tracingClient client passing spans in request tags or null to build a client for the call
+     */
+    private Call untracedCall(Request request, TracingOptions options, SpanContext propagatedContext,
+        OkHttpClient tracingClient) {
+        Call call;
+        if (propagatedContext == null && options.metrics == null) {
+            call = okHttpClient.newCall(request);
+        } else if (tracingClient != null) {
+            Object tag = request.tag();
+            TagWrapper tagWrapper = tag instanceof TagWrapper
+                ? (TagWrapper) tag : new TagWrapper(tag);
+            call = tracingClient.newCall(request.newBuilder()
+                .tag(new TagWrapper(tagWrapper, propagatedContext, options))
+                .build());
+        } else {
+            OkHttpClient.Builder okBuilder = okHttpClient.newBuilder();
+            if (propagatedContext != null) {
+                okBuilder.networkInterceptors().add(0, new PropagationInterceptor(options, propagatedContext));
+            }
+            if (options.metrics != null) {
+                okBuilder.interceptors().add(0, new CallInterceptor(null, null, options, null, null));
+            }
+            call = okBuilder.build().newCall(request);
+        }
+        // the listener is released also if the call is never executed
+        options.eventListeners.discard(call);
+        return call;
+    }
+
+    /**
+     * Get span passed to interceptors in request tag.
+     *
+     * @param request request
+     * @return span or null if the tag is not a {@link TagWrapper} with a span
+     */
+    static Span taggedSpan(Request request) {
+        Object tag = request.tag();
+        return tag instanceof TagWrapper ? ((TagWrapper) tag).getSpan() : null;
+    }
+
+    /**
+     * Get call span started when the call reaches the network passed to interceptors in request tag.
+     *
+     * @param request request
+     * @return deferred span or null
+     */
+    static DeferredSpan taggedDeferredSpan(Request request) {
+        Object tag = request.tag();
+        return tag instanceof TagWrapper ? ((TagWrapper) tag).getDeferredSpan() : null;
+    }
 
-        NetworkInterceptor(Tracer tracer, SpanContext spanContext, List<OkHttpClientSpanDecorator> decorators) {
-            this.parentContext = spanContext;
+    /**
+     * Get options of the call route passed to interceptors in request tag.
+     *
+     * @param request request
+     * @param defaults options used if the tag does not contain options
+     * @return options
+     */
+    static TracingOptions taggedOptions(Request request, TracingOptions defaults) {
+        Object tag = request.tag();
+        TracingOptions options = tag instanceof TagWrapper ? ((TagWrapper) tag).getOptions() : null;
+        return options != null ? options : defaults;
+    }
+
+    /**
+     * Get context propagated by a call which is not traced passed to interceptors in request tag.
+     *
+     * @param request request
+     * @return span context or null
+     */
+    static SpanContext taggedPropagatedContext(Request request) {
+        Object tag = request.tag();
+        return tag instanceof TagWrapper ? ((TagWrapper) tag).getPropagatedContext() : null;
+    }
+
+    /**
+     * Get network hops of the call passed to interceptors in request tag.
+     *
+     * @param request request
+     * @return network hops or null
+     */
+    static NetworkHops taggedHops(Request request) {
+        Object tag = request.tag();
+        return tag instanceof TagWrapper ? ((TagWrapper) tag).getHops() : null;
+    }
+
+    /**
+     * Builder for {@link TracingCallFactory}.
+     */
+    public static class Builder extends AbstractTracingBuilder<Builder> {
+        private OkHttpClient okHttpClient;
+        private boolean sharedClient;
+
+        /**
+         * @param okHttpClient client to instrument
+         * @param tracer tracer
+         */
+        public Builder(OkHttpClient okHttpClient, Tracer tracer) {
+            super(tracer);
+            this.okHttpClient = okHttpClient;
+        }
+
+        /**
+         * Build the instrumented client only once instead of building it for every call. The span
+         * is passed to the interceptors in {@link TagWrapper} therefore {@link Request#tag()} of the call
+         * returns the wrapper with the original tag available in {@link TagWrapper#getTag()}.
+         *
+         * @param sharedClient whether to build the instrumented client once, default false
+         * @return builder
+         */
+        public Builder withSharedClient(boolean sharedClient) {
+            this.sharedClient = sharedClient;
+            return this;
+        }
+
+        public TracingCallFactory build() {
+            return new TracingCallFactory(this);
+        }
+    }
+
+    /**
+     * Callback completing a future with the call span active.
+     */
+    static class FutureCallback implements Callback {
+        private final Tracer tracer;
+        private final CompletableFuture<Response> future = new CompletableFuture<>();
+        /**
+         * Call span, span active when the call was created if the call is not traced or its deferred span
+         * is not started.
+         */
+        private Span span;
+        private DeferredSpan deferredSpan;
+
+        FutureCallback(Tracer tracer) {
             this.tracer = tracer;
-            this.decorators = decorators;
+            this.span = tracer.activeSpan();
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            try (Scope scope = activate()) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            try (Scope scope = activate()) {
+                if (!future.complete(response)) {
+                    response.close();
+                }
+            }
+        }
+
+        private Scope activate() {
+            Span span = deferredSpan != null ? deferredSpan.span() : null;
+            if (span == null) {
+                // e.g. a cache hit without a call span
+                span = this.span;
+            }
+            return span != null ? tracer.activateSpan(span) : null;
+        }
+    }
+
+    /**
+     * Application interceptor which activates and finishes the call span. If metrics are enabled, the call
+     * is measured once, from the start of the call until the call span is finished, also if it is not traced.
+     */
+    static class CallInterceptor implements Interceptor {
+        private Span span;
+        private DeferredSpan deferredSpan;
+        private TracingOptions options;
+        private NetworkHops hops;
+        private CallStartTracker callStartTracker;
+
+        /**
+         * @param span span of the call or null
+         * @param deferredSpan deferred span of the call or null, if both are null spans from the request tag are used
+         * @param options options
+         * @param hops network hops of the call in single span mode or null
+         * @param callStartTracker tracker of call starts or null
+         */
+        CallInterceptor(Span span, DeferredSpan deferredSpan, TracingOptions options, NetworkHops hops,
+            CallStartTracker callStartTracker) {
+            this.span = span;
+            this.deferredSpan = deferredSpan;
+            this.options = options;
+            this.hops = hops;
+            this.callStartTracker = callStartTracker;
+        }
+
+        @Override
+        public Response intercept(final Chain chain) throws IOException {
+            CallStartTracker.CallStart callStart = callStartTracker != null
+                ? callStartTracker.remove(chain.call()) : null;
+            Span span = this.span;
+            DeferredSpan deferredSpan = this.deferredSpan;
+            TracingOptions options = this.options;
+            NetworkHops hops = this.hops;
+            if (span == null && deferredSpan == null) {
+                span = taggedSpan(chain.request());
+                deferredSpan = taggedDeferredSpan(chain.request());
+                if (span == null && deferredSpan == null) {
+                    return proceedUntraced(chain, chain.request(), taggedOptions(chain.request(), options));
+                }
+                options = taggedOptions(chain.request(), options);
+                hops = taggedHops(chain.request());
+            }
+            if (deferredSpan != null) {
+                if (callStart != null) {
+                    deferredSpan.callStart(callStart);
+                }
+                return proceedDeferred(chain, chain.request(), deferredSpan, options, hops);
+            }
+            if (callStart != null && options.sampledSpanPredicate.isSampled(span)) {
+                callStart.setDispatcherTags(span);
+            }
+            return proceed(chain, chain.request(), span, options, hops);
+        }
+
+        /**
+         * Proceed with the call span active and finish it when the response is received
+         * or at the end of the response body. In single span mode the call span is also decorated.
+         */
+        static Response proceed(final Chain chain, Request request, final Span span, final TracingOptions options,
+            NetworkHops hops) throws IOException {
+            long startNanos = options.metrics != null ? System.nanoTime() : 0;
+            final boolean sampled = options.sampledSpanPredicate.isSampled(span);
+            boolean decorate = sampled && hops != null;
+            if (decorate) {
+                for (OkHttpClientSpanDecorator spanDecorator: options.decorators) {
+                    spanDecorator.onRequest(request, span);
+                }
+            }
+            boolean finish = true;
+            boolean error = true;
+            boolean connectionSpans = sampled && options.connectionSpans;
+            Span previousCallSpan = connectionSpans ? ConnectionSpanListener.activate(span) : null;
+            try (Scope activeInterceptorSpan = options.tracer.activateSpan(span)) {
+                Response response = chain.proceed(request);
+                error = isServerError(response);
+                if (decorate) {
+                    for (OkHttpClientSpanDecorator spanDecorator: options.decorators) {
+                        spanDecorator.onResponse(hops.lastConnection(), response, span);
+                    }
+                }
+                if (sampled && options.cacheTags) {
+                    OkHttpClientSpanDecorator.CACHE_TAGS.onResponse(null, response, span);
+                }
+                if (sampled && options.finishOnResponseBody && response.body() != null) {
+                    response = finishOnResponseBody(chain, request, response, span, options, startNanos);
+                    finish = false;
+                }
+                return response;
+            } catch (Exception ex) {
+                if (sampled) {
+                    for (OkHttpClientSpanDecorator spanDecorator : options.decorators) {
+                        spanDecorator.onError(ex, span);
+                    }
+                }
+                throw ex;
+            } finally {
+                if (connectionSpans) {
+                    ConnectionSpanListener.restore(previousCallSpan);
+                }
+                if (finish) {
+                    if (sampled) {
+                        options.eventListeners.report(chain.call(), span);
+                    } else {
+                        options.eventListeners.discard(chain.call());
+                    }
+                    span.finish();
+                    recordMetrics(options, request, startNanos, error);
+                }
+            }
+        }
+
+        /**
+         * Proceed without the call span, it is started by the network interceptor. If the response
+         * is served from the cache without a network request, no span is created.
+         */
+        static Response proceedDeferred(Chain chain, Request request, DeferredSpan deferredSpan,
+            TracingOptions options, NetworkHops hops) throws IOException {
+            long startNanos = options.metrics != null ? System.nanoTime() : 0;
+            Response response;
+            // the span is not started yet, listeners of the call find it instead of an active span
+            DeferredSpan previous = deferredSpan.activate();
+            try {
+                response = chain.proceed(request);
+            } catch (Exception ex) {
+                Span span = deferredSpan.start();
+                if (options.sampledSpanPredicate.isSampled(span)) {
+                    for (OkHttpClientSpanDecorator spanDecorator : options.decorators) {
+                        if (hops != null) {
+                            spanDecorator.onRequest(request, span);
+                        }
+                        spanDecorator.onError(ex, span);
+                    }
+                    options.eventListeners.report(chain.call(), span);
+                } else {
+                    options.eventListeners.discard(chain.call());
+                }
+                span.finish();
+                recordMetrics(options, request, startNanos, true);
+                throw ex;
+            } finally {
+                DeferredSpan.restore(previous);
+            }
+
+            Span span = deferredSpan.span();
+            if (span == null) {
+                options.eventListeners.discard(chain.call());
+                recordMetrics(options, request, startNanos, isServerError(response));
+                return response;
+            }
+            if (!options.sampledSpanPredicate.isSampled(span)) {
+                options.eventListeners.discard(chain.call());
+                span.finish();
+                recordMetrics(options, request, startNanos, isServerError(response));
+                return response;
+            }
+            if (hops != null) {
+                for (OkHttpClientSpanDecorator spanDecorator: options.decorators) {
+                    spanDecorator.onRequest(request, span);
+                    spanDecorator.onResponse(hops.lastConnection(), response, span);
+                }
+            }
+            if (options.cacheTags) {
+                OkHttpClientSpanDecorator.CACHE_TAGS.onResponse(null, response, span);
+            }
+            if (options.finishOnResponseBody && response.body() != null) {
+                return finishOnResponseBody(chain, request, response, span, options, startNanos);
+            }
+            options.eventListeners.report(chain.call(), span);
+            span.finish();
+            recordMetrics(options, request, startNanos, isServerError(response));
+            return response;
+        }
+
+        /**
+         * Proceed with a call which is not traced, e.g. of an excluded route or over the rate limit. The call
+         * is measured until the response is received or until the end of the response body with finish
+         * on response body.
+         */
+        static Response proceedUntraced(Chain chain, final Request request, final TracingOptions options)
+            throws IOException {
+            options.eventListeners.discard(chain.call());
+            if (options.metrics == null) {
+                return chain.proceed(request);
+            }
+            final long startNanos = System.nanoTime();
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (Exception ex) {
+                recordMetrics(options, request, startNanos, true);
+                throw ex;
+            }
+            final boolean serverError = isServerError(response);
+            if (!options.finishOnResponseBody || response.body() == null) {
+                recordMetrics(options, request, startNanos, serverError);
+                return response;
+            }
+            return response.newBuilder()
+                .body(new TracingResponseBody(response.body(), new TracingResponseBody.Callback() {
+                    @Override
+                    public void onEnd(long bytesRead, IOException error) {
+                        recordMetrics(options, request, startNanos, serverError || error != null);
+                    }
+                }))
+                .build();
+        }
+
+        /**
+         * Wrap the response body to finish the call span at the end of the body.
+         */
+        private static Response finishOnResponseBody(final Chain chain, final Request request, Response response,
+            final Span span, final TracingOptions options, final long startNanos) {
+            final boolean serverError = isServerError(response);
+            return response.newBuilder()
+                .body(new TracingResponseBody(response.body(), new TracingResponseBody.Callback() {
+                    @Override
+                    public void onEnd(long bytesRead, IOException error) {
+                        if (error != null) {
+                            for (OkHttpClientSpanDecorator spanDecorator : options.decorators) {
+                                spanDecorator.onError(error, span);
+                            }
+                        }
+                        options.eventListeners.report(chain.call(), span);
+                        span.finish();
+                        recordMetrics(options, request, startNanos, serverError || error != null);
+                    }
+                }))
+                .build();
+        }
+
+        private static boolean isServerError(Response response) {
+            return response.code() >= 500;
+        }
+
+        private static void recordMetrics(TracingOptions options, Request request, long startNanos, boolean error) {
+            if (options.metrics != null) {
+                options.metrics.record(request, options.operationNameStrategy, System.nanoTime() - startNanos, error);
+            }
+        }
+    }
+
+    static class NetworkInterceptor implements Interceptor {
+        private Span parent;
+        private DeferredSpan deferredParent;
+        private TracingOptions options;
+        private NetworkHops hops;
+
+        /**
+         * @param parent parent span or null
+         * @param deferredParent deferred parent span or null, if both are null span from the request tag
+         *                       is used as parent
+         * @param options options
+         * @param hops network hops of the call in single span mode or null
+         */
+        NetworkInterceptor(Span parent, DeferredSpan deferredParent, TracingOptions options, NetworkHops hops) {
+            this.parent = parent;
+            this.deferredParent = deferredParent;
+            this.options = options;
+            this.hops = hops;
         }
 
         @Override
         public Response intercept(Chain chain) throws IOException {
-            Span networkSpan = tracer.buildSpan(chain.request().method())
-                .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
-                .asChildOf(parentContext)
-                .start();
+            Span parent = this.parent;
+            TracingOptions callOptions = this.options;
+            NetworkHops hops = this.hops;
+            if (deferredParent != null) {
+                parent = deferredParent.start();
+            } else if (parent == null) {
+                DeferredSpan taggedDeferredParent = taggedDeferredSpan(chain.request());
+                parent = taggedDeferredParent != null ? taggedDeferredParent.start() : taggedSpan(chain.request());
+                if (parent == null) {
+                    SpanContext propagatedContext = taggedPropagatedContext(chain.request());
+                    if (propagatedContext != null) {
+                        return PropagationInterceptor.propagate(chain,
+                            taggedOptions(chain.request(), this.options), propagatedContext, true);
+                    }
+                    return chain.proceed(chain.request());
+                }
+                callOptions = taggedOptions(chain.request(), callOptions);
+                hops = taggedHops(chain.request());
+            }
+            final TracingOptions options = callOptions;
+            if (!options.sampledSpanPredicate.isSampled(parent)) {
+                // the context of an unsampled call span is not propagated by other calls, it is not cached
+                return PropagationInterceptor.propagate(chain, options, parent.context(), false);
+            }
 
-            for (OkHttpClientSpanDecorator spanDecorator: decorators) {
-                spanDecorator.onRequest(chain.request(), networkSpan);
+            final long startNanos = System.nanoTime();
+            int hop = hops != null ? hops.next(chain.connection()) : 0;
+            // in single span mode the first hop is represented by the decorated call span
+            final boolean ownSpan = hop != 1;
+            ConnectionTags connectionTags = options.connectionSpans && chain.connection() != null
+                ? ConnectionTags.of(chain.connection()) : null;
+            final Span networkSpan;
+            if (ownSpan) {
+                if (hop > 1) {
+                    logHop(parent, hop, chain.request());
+                }
+                Tracer.SpanBuilder spanBuilder = options.tracer
+                    .buildSpan(options.operationNameStrategy.operationName(chain.request()))
+                    .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+                    .asChildOf(parent);
+                SpanContext connectSpanContext = connectionTags != null ? connectionTags.claimConnectSpan() : null;
+                if (connectSpanContext != null) {
+                    spanBuilder.addReference(References.FOLLOWS_FROM, connectSpanContext);
+                }
+                networkSpan = spanBuilder.start();
+                if (connectSpanContext == null && connectionTags != null) {
+                    connectionTags.setConnectSpanReference(networkSpan);
+                }
+                for (OkHttpClientSpanDecorator spanDecorator: options.decorators) {
+                    spanDecorator.onRequest(chain.request(), networkSpan);
+                }
+            } else {
+                networkSpan = parent;
+                if (connectionTags != null) {
+                    // the call span is already started, it cannot reference the connect span
+                    connectionTags.claimConnectSpan();
+                    connectionTags.setConnectSpanReference(networkSpan);
+                }
             }
 
-            Request.Builder requestBuilder = chain.request().newBuilder();
-            tracer.inject(networkSpan.context(), Format.Builtin.HTTP_HEADERS, new RequestBuilderInjectAdapter(requestBuilder));
+            Request request = chain.request();
+            RequestBody requestBody = request.body();
+            if (options.payloadSizes && requestBody != null) {
+                long contentLength = requestBody.contentLength();
+                if (contentLength != -1) {
+                    OkHttpTags.HTTP_REQUEST_SIZE.set(networkSpan, contentLength);
+                } else {
+                    request = request.newBuilder()
+                        .method(request.method(), new CountingRequestBody(requestBody, networkSpan))
+                        .build();
+                }
+            }
+            RequestBuilderInjectAdapter injectAdapter = new RequestBuilderInjectAdapter(request,
+                options.propagationBudget);
+            options.tracer.inject(networkSpan.context(), Format.Builtin.HTTP_HEADERS, injectAdapter);
+            injectAdapter.recordBudget(networkSpan);
 
-            try (Scope scope = tracer.activateSpan(networkSpan)) {
-                Response response = chain.proceed(requestBuilder.build());
-                for (OkHttpClientSpanDecorator spanDecorator: decorators) {
-                    spanDecorator.onResponse(chain.connection(), response, networkSpan);
+            boolean finish = true;
+            try (Scope scope = options.tracer.activateSpan(networkSpan)) {
+                Response response = chain.proceed(injectAdapter.request());
+                if (ownSpan) {
+                    for (OkHttpClientSpanDecorator spanDecorator: options.decorators) {
+                        spanDecorator.onResponse(chain.connection(), response, networkSpan);
+                    }
+                }
+                // a body of unknown length is counted, the network span is finished at its end
+                boolean countBody = options.finishOnResponseBody || options.payloadSizes && ownSpan
+                    && response.body() != null && response.body().contentLength() == -1;
+                if (options.payloadSizes && !countBody && response.body() != null
+                    && response.body().contentLength() != -1) {
+                    OkHttpTags.HTTP_RESPONSE_SIZE.set(networkSpan, response.body().contentLength());
+                }
+                if (countBody && response.body() != null) {
+                    response = response.newBuilder()
+                        .body(new TracingResponseBody(response.body(), new TracingResponseBody.Callback() {
+                            @Override
+                            public void onEnd(long bytesRead, IOException error) {
+                                OkHttpTags.HTTP_RESPONSE_SIZE.set(networkSpan, bytesRead);
+                                OkHttpTags.HTTP_TIME_TO_LAST_BYTE.set(networkSpan,
+                                    (System.nanoTime() - startNanos) / 1000);
+                                if (ownSpan) {
+                                    if (error != null) {
+                                        for (OkHttpClientSpanDecorator spanDecorator: options.decorators) {
+                                            spanDecorator.onError(error, networkSpan);
+                                        }
+                                    }
+                                    networkSpan.finish();
+                                }
+                            }
+                        }))
+                        .build();
+                    finish = false;
                 }
                 return response;
             } finally {
-                networkSpan.finish();
+                if (finish && ownSpan) {
+                    networkSpan.finish();
+                }
+            }
+        }
+
+        private static void logHop(Span span, int hop, Request request) {
+            Map<String, Object> fields = new HashMap<>(4);
+            fields.put("event", NETWORK_HOP);
+            fields.put("hop", hop);
+            fields.put(Tags.HTTP_METHOD.getKey(), request.method());
+            fields.put(Tags.HTTP_URL.getKey(), request.url().toString());
+            span.log(fields);
+        }
+    }
+
+    /**
+     * Network interceptor propagating context of a call which is not traced.
+     */
+    static class PropagationInterceptor implements Interceptor {
+        private TracingOptions options;
+        private SpanContext spanContext;
+
+        PropagationInterceptor(TracingOptions options, SpanContext spanContext) {
+            this.options = options;
+            this.spanContext = spanContext;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            return propagate(chain, options, spanContext, true);
+        }
+
+        /**
+         * Inject the span context, the request is rebuilt only if headers are injected.
+         *
+         * @param cache whether to use the injected headers cache, only for contexts propagated by many calls
+         */
+        static Response propagate(Chain chain, TracingOptions options, SpanContext spanContext, boolean cache)
+            throws IOException {
+            RequestBuilderInjectAdapter injectAdapter = new RequestBuilderInjectAdapter(chain.request(),
+                options.propagationBudget);
+            if (cache && options.injectedHeaders != null) {
+                options.injectedHeaders.inject(spanContext, injectAdapter);
+            } else {
+                options.tracer.inject(spanContext, Format.Builtin.HTTP_HEADERS, injectAdapter);
             }
+            injectAdapter.recordBudget(null);
+            return chain.proceed(injectAdapter.request());
         }
     }
 }
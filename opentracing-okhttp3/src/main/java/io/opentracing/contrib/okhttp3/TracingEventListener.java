@@ -0,0 +1,380 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Event listener recording phases of a call: DNS lookup, connect, TLS handshake, connection acquisition,
+ * writing the request and reading the response headers and body. Phases are added as timestamped logs to
+ * the call span created by {@link TracingCallFactory} or {@link TracingInterceptor} when the span is finished,
+ * optionally also as child spans. Events which happen after the call span is finished, e.g. reading the
+ * response body, are not recorded unless {@code withFinishOnResponseBody}
+ * is used.
+ *
+ * <p>Acquisition of a new connection starts with its DNS lookup or connect and includes them, a pooled
+ * connection is acquired without a measurable phase and only its end is recorded.
+ *
+ * <p>The factory has to be the event listener factory of the client passed to {@link TracingCallFactory} or
+ * {@code TracingInterceptor.addTracing}, or the delegate of
+ * {@link TracingInterceptor#eventListenerFactory(EventListener.Factory)}. A factory wrapped by another factory
+ * is not found and its calls are not reported.
+ *
+ * <p>Initialization via {@link OkHttpClient.Builder#eventListenerFactory(EventListener.Factory)}:
+ * <pre>{@code
+ * OkHttpClient okHttpClient = new OkHttpClient.Builder()
+ *     .eventListenerFactory(new TracingEventListener.Factory(tracer))
+ *     .build();
+ * Call.Factory client = new TracingCallFactory(okHttpClient, tracer);
+ * }</pre>
+ */
+public class TracingEventListener extends DelegatingEventListener {
+    static final String DNS_START = "dns.start";
+    static final String DNS_END = "dns.end";
+    static final String CONNECT_START = "connect.start";
+    static final String CONNECT_END = "connect.end";
+    static final String CONNECT_FAILED = "connect.failed";
+    static final String TLS_START = "tls.start";
+    static final String TLS_END = "tls.end";
+    static final String CONNECTION_ACQUIRE_START = "connection.acquire.start";
+    static final String CONNECTION_ACQUIRE_END = "connection.acquire.end";
+    static final String CONNECTION_RELEASED = "connection.released";
+    static final String REQUEST_HEADERS_START = "request.headers.start";
+    static final String REQUEST_HEADERS_END = "request.headers.end";
+    static final String REQUEST_BODY_START = "request.body.start";
+    static final String REQUEST_BODY_END = "request.body.end";
+    static final String RESPONSE_HEADERS_START = "response.headers.start";
+    static final String RESPONSE_HEADERS_END = "response.headers.end";
+    static final String RESPONSE_BODY_START = "response.body.start";
+    static final String RESPONSE_BODY_END = "response.body.end";
+
+    private static final String START_SUFFIX = ".start";
+    private static final String END_SUFFIX = ".end";
+    private static final String FAILED_SUFFIX = ".failed";
+
+    private final Tracer tracer;
+    private final boolean childSpans;
+
+    private final long startMicros = System.currentTimeMillis() * 1000;
+    private final long startNanos = System.nanoTime();
+    private final List<Event> events = new ArrayList<>();
+    private boolean reported;
+    private boolean acquiring;
+
+    TracingEventListener(Tracer tracer, boolean childSpans, EventListener delegate) {
+        super(delegate);
+        this.tracer = tracer;
+        this.childSpans = childSpans;
+    }
+
+    private synchronized void discard() {
+        reported = true;
+        events.clear();
+    }
+
+    synchronized void report(Span span) {
+        reported = true;
+
+        Map<String, Long> phaseStarts = childSpans ? new HashMap<String, Long>() : null;
+        for (Event event: events) {
+            Map<String, Object> fields = new HashMap<>(2);
+            fields.put("event", event.name);
+            if (event.key != null) {
+                fields.put(event.key, event.value);
+            }
+            span.log(event.micros, fields);
+
+            if (phaseStarts != null) {
+                if (event.name.endsWith(START_SUFFIX)) {
+                    phaseStarts.put(phase(event.name, START_SUFFIX), event.micros);
+                } else if (event.name.endsWith(END_SUFFIX)) {
+                    childSpan(span, phase(event.name, END_SUFFIX), phaseStarts, event.micros, false);
+                } else if (event.name.endsWith(FAILED_SUFFIX)) {
+                    childSpan(span, phase(event.name, FAILED_SUFFIX), phaseStarts, event.micros, true);
+                }
+            }
+        }
+        events.clear();
+    }
+
+    private void childSpan(Span parent, String phase, Map<String, Long> phaseStarts, long finishMicros, boolean error) {
+        Long startMicros = phaseStarts.remove(phase);
+        if (startMicros == null) {
+            return;
+        }
+        Span span = tracer.buildSpan(phase)
+            .asChildOf(parent)
+            .withTag(Tags.COMPONENT.getKey(), TracingCallFactory.COMPONENT_NAME)
+            .withStartTimestamp(startMicros)
+            .start();
+        if (error) {
+            Tags.ERROR.set(span, Boolean.TRUE);
+        }
+        span.finish(finishMicros);
+    }
+
+    private static String phase(String eventName, String suffix) {
+        return eventName.substring(0, eventName.length() - suffix.length());
+    }
+
+    private synchronized void record(String name, String key, Object value) {
+        if (!reported) {
+            long micros = startMicros + (System.nanoTime() - startNanos) / 1000;
+            events.add(new Event(name, micros, key, value));
+        }
+    }
+
+    /**
+     * Record the start of DNS lookup or connect, the first of them also starts the connection acquisition.
+     */
+    private synchronized void recordConnecting(String name) {
+        if (!acquiring) {
+            acquiring = true;
+            record(CONNECTION_ACQUIRE_START, null, null);
+        }
+        record(name, null, null);
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        recordConnecting(DNS_START);
+        super.dnsStart(call, domainName);
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        record(DNS_END, null, null);
+        super.dnsEnd(call, domainName, inetAddressList);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        recordConnecting(CONNECT_START);
+        super.connectStart(call, inetSocketAddress, proxy);
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        record(TLS_START, null, null);
+        super.secureConnectStart(call);
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        record(TLS_END, null, null);
+        super.secureConnectEnd(call, handshake);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        record(CONNECT_END, "protocol", String.valueOf(protocol));
+        super.connectEnd(call, inetSocketAddress, proxy, protocol);
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+        IOException ioe) {
+        record(CONNECT_FAILED, "message", ioe.getMessage());
+        super.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        synchronized (this) {
+            acquiring = false;
+            record(CONNECTION_ACQUIRE_END, null, null);
+        }
+        super.connectionAcquired(call, connection);
+    }
+
+    @Override
+    public void connectionReleased(Call call, Connection connection) {
+        record(CONNECTION_RELEASED, null, null);
+        super.connectionReleased(call, connection);
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        record(REQUEST_HEADERS_START, null, null);
+        super.requestHeadersStart(call);
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        record(REQUEST_HEADERS_END, null, null);
+        super.requestHeadersEnd(call, request);
+    }
+
+    @Override
+    public void requestBodyStart(Call call) {
+        record(REQUEST_BODY_START, null, null);
+        super.requestBodyStart(call);
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        record(REQUEST_BODY_END, "bytes", byteCount);
+        super.requestBodyEnd(call, byteCount);
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        record(RESPONSE_HEADERS_START, null, null);
+        super.responseHeadersStart(call);
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        record(RESPONSE_HEADERS_END, null, null);
+        super.responseHeadersEnd(call, response);
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+        record(RESPONSE_BODY_START, null, null);
+        super.responseBodyStart(call);
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        record(RESPONSE_BODY_END, "bytes", byteCount);
+        super.responseBodyEnd(call, byteCount);
+    }
+
+    private static class Event {
+        private final String name;
+        private final long micros;
+        private final String key;
+        private final Object value;
+
+        Event(String name, long micros, String key, Object value) {
+            this.name = name;
+            this.micros = micros;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Factory creating {@link TracingEventListener} for every call. Listeners of calls which are not traced,
+     * e.g. of excluded routes or over the rate limit, are discarded when the call is created or intercepted.
+     */
+    public static class Factory implements EventListener.Factory {
+        private final Tracer tracer;
+        private final boolean childSpans;
+        private final EventListener.Factory delegate;
+        /**
+         * Listeners of calls which were not reported yet.
+         */
+        final WeakConcurrentMap<Call, TracingEventListener> listeners = new WeakConcurrentMap<>();
+
+        /**
+         * @param tracer tracer
+         */
+        public Factory(Tracer tracer) {
+            this(tracer, false);
+        }
+
+        /**
+         * @param tracer tracer
+         * @param childSpans whether to create child spans of the call span for phases
+         */
+        public Factory(Tracer tracer, boolean childSpans) {
+            this(tracer, childSpans, null);
+        }
+
+        /**
+         * @param tracer tracer
+         * @param childSpans whether to create child spans of the call span for phases
+         * @param delegate factory of listeners which are notified about all events, can be null
+         */
+        public Factory(Tracer tracer, boolean childSpans, EventListener.Factory delegate) {
+            this.tracer = tracer;
+            this.childSpans = childSpans;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public EventListener create(Call call) {
+            EventListener delegateListener = delegate != null ? delegate.create(call) : EventListener.NONE;
+            TracingEventListener listener = new TracingEventListener(tracer, childSpans, delegateListener);
+            listeners.put(call, listener);
+            return listener;
+        }
+    }
+
+    /**
+     * Factories of listeners of the clients of one {@link TracingCallFactory} or {@link TracingInterceptor},
+     * usually at most one. Other event listener factories are ignored.
+     */
+    static final class Registry {
+        /**
+         * Factories, an array is iterated without allocating an iterator.
+         */
+        private volatile Factory[] factories = new Factory[0];
+
+        /**
+         * @param factory event listener factory of a traced client, can be null
+         */
+        synchronized void add(EventListener.Factory factory) {
+            if (factory instanceof Factory && !Arrays.asList(factories).contains(factory)) {
+                Factory[] factories = Arrays.copyOf(this.factories, this.factories.length + 1);
+                factories[factories.length - 1] = (Factory) factory;
+                this.factories = factories;
+            }
+        }
+
+        /**
+         * Add recorded phases of the call to its span. This is invoked before the call span is finished.
+         *
+         * @param call call
+         * @param span call span
+         */
+        void report(Call call, Span span) {
+            TracingEventListener listener = remove(call);
+            if (listener != null) {
+                listener.report(span);
+            }
+        }
+
+        /**
+         * Discard recorded phases of the call, e.g. if its span is not sampled.
+         *
+         * @param call call
+         */
+        void discard(Call call) {
+            TracingEventListener listener = remove(call);
+            if (listener != null) {
+                listener.discard();
+            }
+        }
+
+        private TracingEventListener remove(Call call) {
+            for (Factory factory: factories) {
+                TracingEventListener listener = factory.listeners.remove(call);
+                if (listener != null) {
+                    return listener;
+                }
+            }
+            return null;
+        }
+    }
+}
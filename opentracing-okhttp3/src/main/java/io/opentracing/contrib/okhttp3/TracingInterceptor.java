@@ -1,17 +1,19 @@
 package io.opentracing.contrib.okhttp3;
 
 import io.opentracing.Span;
-import io.opentracing.contrib.concurrent.TracedExecutorService;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
+import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
+import io.opentracing.noop.NoopSpan;
 import io.opentracing.tag.Tags;
 import okhttp3.Dispatcher;
+import okhttp3.EventListener;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -19,21 +21,25 @@ import okhttp3.Response;
 
 /**
  * OkHttp interceptor to trace client requests. Interceptor adds span context into outgoing requests.
- * Please only use this instrumentation when {@link TracingCallFactory} is not possible to use. This
- * instrumentation fails to properly infer parent span when doing simultaneously asynchronous calls.
+ * Please only use this instrumentation when {@link TracingCallFactory} is not possible to use.
  *
  * <p>Initialization via {@link TracingInterceptor#addTracing(OkHttpClient.Builder, Tracer, List)}
  *
  * <p>or instantiate the interceptor and add it to {@link OkHttpClient.Builder#addInterceptor(Interceptor)} and
- * {@link OkHttpClient.Builder#addNetworkInterceptor(Interceptor)}.
+ * {@link OkHttpClient.Builder#addNetworkInterceptor(Interceptor)}. To properly infer parent span of
+ * asynchronous calls also add {@link #eventListenerFactory(EventListener.Factory)} to
+ * {@link OkHttpClient.Builder#eventListenerFactory(EventListener.Factory)}.
+ *
+ * <p>Spans which are not sampled, see {@link Builder#withSampledSpanPredicate(SampledSpanPredicate)},
+ * are only propagated. Calls of a no-op tracer are not instrumented at all.
  * @author Pavol Loffay
  */
 public class TracingInterceptor implements Interceptor {
     private static final Logger log = Logger.getLogger(TracingInterceptor.class.getName());
 
-    private Tracer tracer;
-    private List<OkHttpClientSpanDecorator> decorators;
-
+    private TracingOptions options;
+    private CallStartTracker callStartTracker;
+    private TracingCallFactory.NetworkInterceptor networkInterceptor;
 
     /**
      * Create tracing interceptor. Interceptor has to be added to {@link OkHttpClient.Builder#addInterceptor(Interceptor)}
@@ -53,8 +59,14 @@ public class TracingInterceptor implements Interceptor {
      * @param decorators decorators
      */
     public TracingInterceptor(Tracer tracer, List<OkHttpClientSpanDecorator> decorators) {
-        this.tracer = tracer;
-        this.decorators = new ArrayList<>(decorators);
+        this(new Builder(tracer)
+            .withDecorators(decorators));
+    }
+
+    private TracingInterceptor(Builder builder) {
+        this.options = new TracingOptions(builder);
+        this.callStartTracker = new CallStartTracker(options.tracer, true, options.dispatcherTags);
+        this.networkInterceptor = new TracingCallFactory.NetworkInterceptor(null, null, options, null);
     }
 
     public static OkHttpClient addTracing(OkHttpClient.Builder builder, Tracer tracer) {
@@ -62,54 +74,222 @@ public class TracingInterceptor implements Interceptor {
                 Collections.singletonList(OkHttpClientSpanDecorator.STANDARD_TAGS));
     }
 
+    /**
+     * Add tracing to the client. The dispatcher is replaced by one running calls on a fixed pool of 10 threads,
+     * use {@link #addTracing(OkHttpClient.Builder, Tracer, List, ExecutorService)} to keep the dispatcher
+     * or to supply the executor.
+     *
+     * @param builder client builder
+     * @param tracer tracer
+     * @param decorators decorators
+     * @return traced client
+     */
     public static OkHttpClient addTracing(OkHttpClient.Builder builder,
                                           Tracer tracer, List<OkHttpClientSpanDecorator> decorators) {
-        TracingInterceptor tracingInterceptor = new TracingInterceptor(tracer, decorators);
+        return addTracing(builder, tracer, decorators, Executors.newFixedThreadPool(10));
+    }
+
+    /**
+     * Add tracing to the client.
+     *
+     * @param builder client builder
+     * @param tracer tracer
+     * @param decorators decorators
+     * @param executorService executor of a new dispatcher with the same limits as the dispatcher of the builder,
+     *                        or null to keep the dispatcher of the builder
+     * @return traced client
+     * @see #addTracing(OkHttpClient.Builder, TracingInterceptor, ExecutorService)
+     */
+    public static OkHttpClient addTracing(OkHttpClient.Builder builder, Tracer tracer,
+                                          List<OkHttpClientSpanDecorator> decorators,
+                                          ExecutorService executorService) {
+        return addTracing(builder, new TracingInterceptor(tracer, decorators), executorService);
+    }
+
+    /**
+     * Add tracing to the client.
+     *
+     * <p>Parent spans of asynchronous calls are captured when calls are enqueued therefore the dispatcher
+     * does not have to be traced. If an executor is supplied, the span active when a call was enqueued is also
+     * active in its {@link okhttp3.Callback}, also if the call waited in the dispatcher queue and was promoted on
+     * the thread of another call. Any executor can be used, e.g. virtual thread per task executor on JDK 21+.
+     * Dispatcher queue wait and depth ({@link Builder#withDispatcherTags(boolean)}) are tagged only if an executor
+     * is supplied, calls of a kept dispatcher are not known to be enqueued.
+     *
+     * @param builder client builder
+     * @param tracingInterceptor interceptor, e.g. built by {@link Builder}
+     * @param executorService executor of a new dispatcher with the same limits as the dispatcher of the builder,
+     *                        or null to keep the dispatcher of the builder
+     * @return traced client
+     */
+    public static OkHttpClient addTracing(OkHttpClient.Builder builder, TracingInterceptor tracingInterceptor,
+                                          ExecutorService executorService) {
         builder.interceptors().add(0, tracingInterceptor);
         builder.networkInterceptors().add(0, tracingInterceptor);
-        builder.dispatcher(new Dispatcher(new TracedExecutorService(Executors.newFixedThreadPool(10), tracer)));
-        return builder.build();
+        OkHttpClient client = builder.build();
+        tracingInterceptor.options.eventListeners.add(client.eventListenerFactory());
+
+        Dispatcher dispatcher = client.dispatcher();
+        if (executorService != null) {
+            dispatcher = new Dispatcher(tracingInterceptor.callStartTracker.dispatcherExecutor(executorService));
+            dispatcher.setMaxRequests(client.dispatcher().getMaxRequests());
+            dispatcher.setMaxRequestsPerHost(client.dispatcher().getMaxRequestsPerHost());
+        }
+        return client.newBuilder()
+            .dispatcher(dispatcher)
+            .eventListenerFactory(tracingInterceptor.callStartTracker
+                .eventListenerFactory(tracingInterceptor.connectionSpans(client.eventListenerFactory()), dispatcher))
+            .build();
+    }
+
+    /**
+     * Event listener factory which captures the active span context when a call is executed or enqueued.
+     * The captured context is used as parent of the span created by this interceptor, therefore parent is correct
+     * even if the interceptor runs on a different thread e.g. {@link Dispatcher} thread.
+     *
+     * <p>Dispatcher queue wait and depth are not known to listeners created by this factory, they are tagged only by
+     * clients created by {@code addTracing} with an executor.
+     *
+     * @param delegate factory of listeners which are notified about all events, can be null
+     * @return event listener factory to add to {@link OkHttpClient.Builder#eventListenerFactory(EventListener.Factory)}
+     */
+    public EventListener.Factory eventListenerFactory(EventListener.Factory delegate) {
+        options.eventListeners.add(delegate);
+        return callStartTracker.eventListenerFactory(connectionSpans(delegate), null);
+    }
+
+    private EventListener.Factory connectionSpans(EventListener.Factory delegate) {
+        return options.connectionSpans ? new ConnectionSpanListener.Factory(options, delegate) : delegate;
     }
 
     @Override
     public Response intercept(Chain chain) throws IOException {
-        Response response = null;
-
         // application interceptor?
         if (chain.connection() == null) {
-            Span span = tracer.buildSpan(chain.request().method())
-                    .withTag(Tags.COMPONENT.getKey(), TracingCallFactory.COMPONENT_NAME)
-                    .start();
-
-            Request.Builder requestBuilder = chain.request().newBuilder();
-
-            Object tag = chain.request().tag();
-            TagWrapper tagWrapper = tag instanceof TagWrapper
-                    ? (TagWrapper) tag : new TagWrapper(tag);
-            requestBuilder.tag(new TagWrapper(tagWrapper, span));
-
-            try {
-                response = chain.proceed(requestBuilder.build());
-            } catch (Throwable ex) {
-                for (OkHttpClientSpanDecorator spanDecorator: decorators) {
-                    spanDecorator.onError(ex, span);
-                }
-                throw ex;
-            } finally {
-                span.finish();
+            return interceptCall(chain);
+        }
+
+        if (!(chain.request().tag() instanceof TagWrapper)) {
+            log.fine("tag is null or not an instance of TagWrapper, request is not traced");
+        }
+        return networkInterceptor.intercept(chain);
+    }
+
+    /**
+     * Trace the call as the application interceptor.
+     */
+    private Response interceptCall(Chain chain) throws IOException {
+        TracingOptions options = this.options.route(chain.request().url());
+        // null if the client does not have the event listener of this interceptor
+        CallStartTracker.CallStart callStart = callStartTracker.remove(chain.call());
+        if (!options.traced) {
+            return TracingCallFactory.CallInterceptor.proceedUntraced(chain, chain.request(), options);
+        }
+        if (!options.tryAcquire(chain.request().url())) {
+            return propagate(chain, options, callStart);
+        }
+        Tracer.SpanBuilder spanBuilder = options.tracer
+                .buildSpan(options.operationNameStrategy.operationName(chain.request()))
+                .withTag(Tags.COMPONENT.getKey(), TracingCallFactory.COMPONENT_NAME);
+        if (options.singleSpan) {
+            spanBuilder.withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT);
+        }
+        if (callStart != null) {
+            if (callStart.parentContext != null) {
+                spanBuilder.asChildOf(callStart.parentContext);
+            } else {
+                spanBuilder.ignoreActiveSpan();
             }
-        } else {
-            Object tag = chain.request().tag();
-            if (tag instanceof TagWrapper) {
-                TagWrapper tagWrapper = (TagWrapper) tag;
-                response = new TracingCallFactory.NetworkInterceptor(tracer, tagWrapper.getSpan().context(), decorators)
-                        .intercept(chain);
+        }
+        if (!options.cacheHitSpans) {
+            return proceedDeferred(chain, options, spanBuilder, callStart);
+        }
+        Span span = spanBuilder.start();
+        if (span instanceof NoopSpan) {
+            return TracingCallFactory.CallInterceptor.proceedUntraced(chain, chain.request(), options);
+        }
+        if (callStart != null && options.sampledSpanPredicate.isSampled(span)) {
+            callStart.setDispatcherTags(span);
+        }
+
+        NetworkHops hops = options.singleSpan ? new NetworkHops() : null;
+        Object tag = chain.request().tag();
+        TagWrapper tagWrapper = tag instanceof TagWrapper
+                ? (TagWrapper) tag : new TagWrapper(tag);
+        Request request = chain.request().newBuilder()
+                .tag(new TagWrapper(tagWrapper, span, options, hops))
+                .build();
+        return TracingCallFactory.CallInterceptor.proceed(chain, request, span, options, hops);
+    }
+
+    /**
+     * Proceed with the call span started only when the call reaches the network or fails.
+     */
+    private Response proceedDeferred(Chain chain, TracingOptions options, Tracer.SpanBuilder spanBuilder,
+            CallStartTracker.CallStart callStart) throws IOException {
+        if (callStart == null) {
+            // bind the parent now, other interceptors may activate spans before the span is started
+            Span activeSpan = options.tracer.activeSpan();
+            if (activeSpan != null) {
+                spanBuilder.asChildOf(activeSpan);
             } else {
-                log.severe("tag is null or not an instance of TagWrapper, skipping decorator onResponse()");
+                spanBuilder.ignoreActiveSpan();
             }
         }
+        DeferredSpan deferredSpan = new DeferredSpan(spanBuilder, options.sampledSpanPredicate);
+        if (callStart != null) {
+            deferredSpan.callStart(callStart);
+        }
+        NetworkHops hops = options.singleSpan ? new NetworkHops() : null;
+        Object tag = chain.request().tag();
+        TagWrapper tagWrapper = tag instanceof TagWrapper
+                ? (TagWrapper) tag : new TagWrapper(tag);
+        Request request = chain.request().newBuilder()
+                .tag(new TagWrapper(tagWrapper, deferredSpan, options, hops))
+                .build();
+        return TracingCallFactory.CallInterceptor.proceedDeferred(chain, request, deferredSpan, options, hops);
+    }
 
-        return response;
+    /**
+     * Proceed without tracing the call, only propagate context of its parent span.
+     *
+     * @param options options of the call route
+     */
+    private Response propagate(Chain chain, TracingOptions options, CallStartTracker.CallStart callStart)
+            throws IOException {
+        SpanContext parentContext;
+        if (callStart != null) {
+            parentContext = callStart.parentContext;
+        } else {
+            Span activeSpan = options.tracer.activeSpan();
+            parentContext = activeSpan != null ? activeSpan.context() : null;
+        }
+        if (parentContext == null) {
+            return TracingCallFactory.CallInterceptor.proceedUntraced(chain, chain.request(), options);
+        }
+        Object tag = chain.request().tag();
+        TagWrapper tagWrapper = tag instanceof TagWrapper
+                ? (TagWrapper) tag : new TagWrapper(tag);
+        Request request = chain.request().newBuilder()
+                .tag(new TagWrapper(tagWrapper, parentContext, options))
+                .build();
+        return TracingCallFactory.CallInterceptor.proceedUntraced(chain, request, options);
     }
 
+    /**
+     * Builder for {@link TracingInterceptor}.
+     */
+    public static class Builder extends AbstractTracingBuilder<Builder> {
+
+        /**
+         * @param tracer tracer
+         */
+        public Builder(Tracer tracer) {
+            super(tracer);
+        }
+
+        public TracingInterceptor build() {
+            return new TracingInterceptor(this);
+        }
+    }
 }
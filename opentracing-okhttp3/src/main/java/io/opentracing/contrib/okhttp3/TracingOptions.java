@@ -0,0 +1,131 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopTracer;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Options shared by {@link TracingCallFactory} and {@link TracingInterceptor}.
+ */
+class TracingOptions {
+    final Tracer tracer;
+    /**
+     * Decorators, an array is iterated without allocating an iterator.
+     */
+    final OkHttpClientSpanDecorator[] decorators;
+    final boolean finishOnResponseBody;
+    final boolean payloadSizes;
+    final boolean dispatcherTags;
+    final SampledSpanPredicate sampledSpanPredicate;
+    final OperationNameStrategy operationNameStrategy;
+    final boolean singleSpan;
+    final HostRateLimiter rateLimiter;
+    final boolean connectionSpans;
+    final boolean cacheTags;
+    final boolean cacheHitSpans;
+    final HttpMetrics metrics;
+    final PropagationBudget propagationBudget;
+    /**
+     * Cache of headers propagated by untraced calls, null if disabled.
+     */
+    final InjectedHeaders injectedHeaders;
+    /**
+     * Factories of {@link TracingEventListener} of the traced clients.
+     */
+    final TracingEventListener.Registry eventListeners;
+    /**
+     * Whether calls are traced, false for excluded routes and a no-op tracer.
+     */
+    final boolean traced;
+    /**
+     * Options of configured routes, null if there are no routes.
+     */
+    private final PrefixTrie<TracingOptions> routes;
+
+    TracingOptions(AbstractTracingBuilder<?> builder) {
+        this.tracer = builder.slowCallThresholdMicros >= 0
+            ? new SlowCallTracer(builder.tracer, builder.slowCallThresholdMicros) : builder.tracer;
+        this.decorators = builder.decorators.toArray(new OkHttpClientSpanDecorator[0]);
+        this.finishOnResponseBody = builder.finishOnResponseBody;
+        this.payloadSizes = builder.payloadSizes;
+        this.dispatcherTags = builder.dispatcherTags;
+        this.sampledSpanPredicate = builder.slowCallThresholdMicros >= 0
+            ? new UnwrappingSampledSpanPredicate(builder.sampledSpanPredicate) : builder.sampledSpanPredicate;
+        this.operationNameStrategy = builder.operationNameStrategy;
+        this.singleSpan = builder.singleSpan;
+        this.rateLimiter = builder.rateLimiter;
+        this.connectionSpans = builder.connectionSpans;
+        this.cacheTags = builder.cacheTags;
+        this.cacheHitSpans = builder.cacheHitSpans;
+        this.metrics = builder.metrics;
+        this.propagationBudget = builder.propagationBudget;
+        this.injectedHeaders = builder.injectedHeadersCache ? new InjectedHeaders(this.tracer) : null;
+        this.eventListeners = new TracingEventListener.Registry();
+        // checked before any span or request tag is built, also in deferred mode
+        this.traced = !(builder.tracer instanceof NoopTracer);
+        this.routes = builder.routes != null ? builder.routes.compile(this) : null;
+    }
+
+    /**
+     * Options of a route derived from the default options.
+     */
+    TracingOptions(TracingOptions defaults, boolean traced, OkHttpClientSpanDecorator[] decorators,
+        OperationNameStrategy operationNameStrategy) {
+        this.tracer = defaults.tracer;
+        this.decorators = decorators;
+        this.finishOnResponseBody = defaults.finishOnResponseBody;
+        this.payloadSizes = defaults.payloadSizes;
+        this.dispatcherTags = defaults.dispatcherTags;
+        this.sampledSpanPredicate = defaults.sampledSpanPredicate;
+        this.operationNameStrategy = operationNameStrategy;
+        this.singleSpan = defaults.singleSpan;
+        this.rateLimiter = defaults.rateLimiter;
+        this.connectionSpans = defaults.connectionSpans;
+        this.cacheTags = defaults.cacheTags;
+        this.cacheHitSpans = defaults.cacheHitSpans;
+        this.metrics = defaults.metrics;
+        this.propagationBudget = defaults.propagationBudget;
+        this.injectedHeaders = defaults.injectedHeaders;
+        this.eventListeners = defaults.eventListeners;
+        this.traced = traced && defaults.traced;
+        this.routes = null;
+    }
+
+    /**
+     * @param url url of the call
+     * @return whether the call is admitted for tracing by the rate limiter
+     */
+    boolean tryAcquire(HttpUrl url) {
+        return rateLimiter == null || rateLimiter.tryAcquire(url.host());
+    }
+
+    /**
+     * @param url url of the call
+     * @return options of the route of the url, these options if no route matches
+     */
+    TracingOptions route(HttpUrl url) {
+        if (routes == null) {
+            return this;
+        }
+        TracingOptions route = routes.lookup(url.host(), url.encodedPath());
+        return route != null ? route : this;
+    }
+
+    /**
+     * Passes spans started by the tracer to the predicate instead of spans buffered by {@link SlowCallTracer}.
+     */
+    private static class UnwrappingSampledSpanPredicate implements SampledSpanPredicate {
+        private final SampledSpanPredicate delegate;
+
+        UnwrappingSampledSpanPredicate(SampledSpanPredicate delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean isSampled(Span span) {
+            return delegate.isSampled(SlowCallTracer.unwrap(span));
+        }
+    }
+}
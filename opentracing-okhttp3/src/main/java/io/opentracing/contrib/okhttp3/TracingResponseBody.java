@@ -0,0 +1,113 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Response body which counts streamed bytes and notifies {@link Callback} when the body is fully read,
+ * closed or reading fails. The body is not buffered or copied.
+ */
+class TracingResponseBody extends ResponseBody {
+
+    interface Callback {
+        /**
+         * Invoked only once.
+         *
+         * @param bytesRead number of bytes read from the body
+         * @param error exception thrown when reading or null
+         */
+        void onEnd(long bytesRead, IOException error);
+    }
+
+    private final ResponseBody delegate;
+    private final Callback callback;
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private BufferedSource source;
+    private long bytesRead;
+
+    TracingResponseBody(ResponseBody delegate, Callback callback) {
+        this.delegate = delegate;
+        this.callback = callback;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public synchronized BufferedSource source() {
+        if (source == null) {
+            source = Okio.buffer(new CountingSource(delegate.source()));
+        }
+        return source;
+    }
+
+    @Override
+    public void close() {
+        BufferedSource source;
+        synchronized (this) {
+            source = this.source;
+        }
+        try {
+            if (source != null) {
+                source.close();
+            } else {
+                delegate.close();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            end(null);
+        }
+    }
+
+    private void end(IOException error) {
+        if (ended.compareAndSet(false, true)) {
+            callback.onEnd(bytesRead, error);
+        }
+    }
+
+    private class CountingSource extends ForwardingSource {
+        CountingSource(BufferedSource delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read;
+            try {
+                read = super.read(sink, byteCount);
+            } catch (IOException ex) {
+                end(ex);
+                throw ex;
+            }
+            if (read == -1) {
+                end(null);
+            } else {
+                bytesRead += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                end(null);
+            }
+        }
+    }
+}
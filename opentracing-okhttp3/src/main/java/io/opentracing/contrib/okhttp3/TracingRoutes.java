@@ -0,0 +1,98 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configuration of tracing per host and path prefix, e.g. to exclude health checks from tracing or to use
+ * different decorators for some endpoints. The configuration is consulted before any span is built.
+ *
+ * <p>A prefix matches a path if the path equals the prefix or continues with {@code /} after it, e.g.
+ * {@code /health} matches {@code /health/live} but not {@code /healthz}. The longest matching prefix wins,
+ * routes of the host take precedence over routes of any host.
+ *
+ * <pre>{@code
+ * TracingRoutes routes = new TracingRoutes.Builder()
+ *     .exclude(null, "/health")
+ *     .route("api.example.com", "/users", decorators, null)
+ *     .build();
+ * }</pre>
+ */
+public final class TracingRoutes {
+    private final List<Route> routes;
+
+    private TracingRoutes(List<Route> routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * Compile routes into a trie of options derived from the default options.
+     *
+     * @param defaults default options
+     * @return trie of route options
+     */
+    PrefixTrie<TracingOptions> compile(TracingOptions defaults) {
+        PrefixTrie.Builder<TracingOptions> trie = new PrefixTrie.Builder<>();
+        for (Route route: routes) {
+            trie.put(route.host, route.pathPrefix, new TracingOptions(defaults, route.traced,
+                route.decorators != null
+                    ? route.decorators.toArray(new OkHttpClientSpanDecorator[0]) : defaults.decorators,
+                route.operationNameStrategy != null ? route.operationNameStrategy : defaults.operationNameStrategy));
+        }
+        return trie.build();
+    }
+
+    private static class Route {
+        private final String host;
+        private final String pathPrefix;
+        private final boolean traced;
+        private final List<OkHttpClientSpanDecorator> decorators;
+        private final OperationNameStrategy operationNameStrategy;
+
+        Route(String host, String pathPrefix, boolean traced, List<OkHttpClientSpanDecorator> decorators,
+            OperationNameStrategy operationNameStrategy) {
+            this.host = host;
+            this.pathPrefix = pathPrefix;
+            this.traced = traced;
+            this.decorators = decorators;
+            this.operationNameStrategy = operationNameStrategy;
+        }
+    }
+
+    public static class Builder {
+        private final List<Route> routes = new ArrayList<>();
+
+        /**
+         * Do not trace calls of the route.
+         *
+         * @param host host or null for any host
+         * @param pathPrefix path prefix
+         * @return builder
+         */
+        public Builder exclude(String host, String pathPrefix) {
+            routes.add(new Route(host, pathPrefix, false, null, null));
+            return this;
+        }
+
+        /**
+         * Trace calls of the route with the given decorators and operation name strategy.
+         *
+         * @param host host or null for any host
+         * @param pathPrefix path prefix
+         * @param decorators decorators or null to use the default decorators
+         * @param operationNameStrategy operation name strategy or null to use the default strategy
+         * @return builder
+         */
+        public Builder route(String host, String pathPrefix, List<OkHttpClientSpanDecorator> decorators,
+            OperationNameStrategy operationNameStrategy) {
+            routes.add(new Route(host, pathPrefix, true,
+                decorators != null ? new ArrayList<>(decorators) : null, operationNameStrategy));
+            return this;
+        }
+
+        public TracingRoutes build() {
+            return new TracingRoutes(Collections.unmodifiableList(new ArrayList<>(routes)));
+        }
+    }
+}
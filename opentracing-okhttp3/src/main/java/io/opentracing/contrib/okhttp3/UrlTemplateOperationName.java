@@ -0,0 +1,262 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+/**
+ * Operation name strategy naming spans by HTTP method and route template of the URL path,
+ * e.g. {@code GET /users/{id}}.
+ *
+ * <p>Paths matching a configured template, e.g. {@code /users/{userId}/orders/{orderId}}, are named by
+ * the template, a segment in braces matches any segment. In other paths numeric segments are replaced by
+ * {@code {id}}, UUIDs by {@code {uuid}} and hexadecimal hashes of at least 16 characters by {@code {hash}}.
+ *
+ * <p>Operation names and templates are cached in a bounded LRU cache keyed by method, host and path, therefore
+ * high-cardinality paths are not templated on every call. Lookups compare the path within the URL string and
+ * do not allocate.
+ */
+public class UrlTemplateOperationName implements OperationNameStrategy {
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private static final int MIN_HASH_LENGTH = 16;
+    private static final int UUID_LENGTH = 36;
+
+    private final List<String> templates;
+    private final List<String[]> templateSegments;
+    private final LruCache<Key, String> cache;
+
+    /**
+     * Keys reused by the thread for lookups.
+     */
+    private static final ThreadLocal<Key> lookupKeys = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+
+    public UrlTemplateOperationName() {
+        this(Collections.<String>emptyList());
+    }
+
+    /**
+     * @param templates route templates, e.g. {@code /users/{userId}/orders/{orderId}}
+     */
+    public UrlTemplateOperationName(List<String> templates) {
+        this(templates, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param templates route templates, e.g. {@code /users/{userId}/orders/{orderId}}
+     * @param cacheSize maximum number of cached templates
+     */
+    public UrlTemplateOperationName(List<String> templates, int cacheSize) {
+        this.templates = new ArrayList<>(templates.size());
+        this.templateSegments = new ArrayList<>(templates.size());
+        for (String template: templates) {
+            String path = template.startsWith("/") ? template : "/" + template;
+            this.templates.add(path);
+            this.templateSegments.add(path.substring(1).split("/", -1));
+        }
+        this.cache = new LruCache<>(cacheSize);
+    }
+
+    @Override
+    public String operationName(Request request) {
+        return lookup(request.method(), request.url());
+    }
+
+    /**
+     * @param url url
+     * @return route template of the URL path
+     */
+    public String template(HttpUrl url) {
+        return lookup(null, url);
+    }
+
+    /**
+     * @param method method or null to look up the template
+     */
+    private String lookup(String method, HttpUrl url) {
+        Key lookupKey = lookupKeys.get().set(method, url);
+        try {
+            String value = cache.get(lookupKey);
+            if (value == null) {
+                String template = createTemplate(url.encodedPathSegments());
+                value = method != null ? method + " " + template : template;
+                cache.put(lookupKey.copy(), value);
+            }
+            return value;
+        } finally {
+            lookupKey.clear();
+        }
+    }
+
+    private String createTemplate(List<String> segments) {
+        for (int i = 0; i < templateSegments.size(); i++) {
+            if (matches(templateSegments.get(i), segments)) {
+                return templates.get(i);
+            }
+        }
+
+        StringBuilder template = new StringBuilder();
+        for (String segment: segments) {
+            template.append('/');
+            if (isNumber(segment)) {
+                template.append("{id}");
+            } else if (isUuid(segment)) {
+                template.append("{uuid}");
+            } else if (isHash(segment)) {
+                template.append("{hash}");
+            } else {
+                template.append(segment);
+            }
+        }
+        return template.toString();
+    }
+
+    private static boolean matches(String[] templateSegments, List<String> segments) {
+        if (templateSegments.length != segments.size()) {
+            return false;
+        }
+        for (int i = 0; i < templateSegments.length; i++) {
+            String templateSegment = templateSegments[i];
+            boolean placeholder = templateSegment.length() > 1 && templateSegment.charAt(0) == '{'
+                && templateSegment.charAt(templateSegment.length() - 1) == '}';
+            if (!placeholder && !templateSegment.equals(segments.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isNumber(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isUuid(String segment) {
+        if (segment.length() != UUID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = segment.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!isHexDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isHash(String segment) {
+        if (segment.length() < MIN_HASH_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (!isHexDigit(segment.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * Cache key of method, host and encoded path. The path is a region of the URL string, which is cached by
+     * {@link HttpUrl}, so keys used for lookups do not copy it.
+     */
+    private static final class Key {
+        private String method;
+        private String host;
+        private String url;
+        private int pathStart;
+        private int pathEnd;
+        private int hash;
+
+        Key set(String method, HttpUrl httpUrl) {
+            this.method = method;
+            this.host = httpUrl.host();
+            this.url = httpUrl.toString();
+            // same bounds as HttpUrl#encodedPath()
+            this.pathStart = url.indexOf('/', httpUrl.scheme().length() + 3);
+            int pathEnd = url.length();
+            for (int i = pathStart; i < url.length(); i++) {
+                char c = url.charAt(i);
+                if (c == '?' || c == '#') {
+                    pathEnd = i;
+                    break;
+                }
+            }
+            this.pathEnd = pathEnd;
+
+            int hash = method != null ? method.hashCode() : 0;
+            hash = 31 * hash + host.hashCode();
+            for (int i = pathStart; i < pathEnd; i++) {
+                hash = 31 * hash + url.charAt(i);
+            }
+            this.hash = hash;
+            return this;
+        }
+
+        /**
+         * @return key holding only the path instead of the whole URL
+         */
+        Key copy() {
+            Key copy = new Key();
+            copy.method = method;
+            copy.host = host;
+            copy.url = url.substring(pathStart, pathEnd);
+            copy.pathStart = 0;
+            copy.pathEnd = copy.url.length();
+            copy.hash = hash;
+            return copy;
+        }
+
+        void clear() {
+            method = null;
+            host = null;
+            url = null;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            int length = pathEnd - pathStart;
+            return hash == key.hash
+                && (method == null ? key.method == null : method.equals(key.method))
+                && host.equals(key.host)
+                && length == key.pathEnd - key.pathStart
+                && url.regionMatches(pathStart, key.url, key.pathStart, length);
+        }
+    }
+}
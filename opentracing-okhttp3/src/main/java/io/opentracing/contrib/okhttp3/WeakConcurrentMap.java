@@ -0,0 +1,123 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent map with weakly referenced keys compared by identity. Entries of garbage collected keys
+ * are removed on writes.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class WeakConcurrentMap<K, V> {
+    private final ConcurrentMap<Object, V> map = new ConcurrentHashMap<>();
+    private final ReferenceQueue<K> referenceQueue = new ReferenceQueue<>();
+
+    /**
+     * Lookup keys reused by the thread, lookups do not allocate.
+     */
+    private static final ThreadLocal<LookupKey> lookupKeys = new ThreadLocal<LookupKey>() {
+        @Override
+        protected LookupKey initialValue() {
+            return new LookupKey();
+        }
+    };
+
+    V get(K key) {
+        LookupKey lookupKey = lookupKeys.get();
+        lookupKey.key = key;
+        try {
+            return map.get(lookupKey);
+        } finally {
+            lookupKey.key = null;
+        }
+    }
+
+    /**
+     * @return previous value or null if there was no mapping
+     */
+    V putIfAbsent(K key, V value) {
+        expungeStaleEntries();
+        return map.putIfAbsent(new WeakKey<>(key, referenceQueue), value);
+    }
+
+    V put(K key, V value) {
+        expungeStaleEntries();
+        return map.put(new WeakKey<>(key, referenceQueue), value);
+    }
+
+    V remove(K key) {
+        LookupKey lookupKey = lookupKeys.get();
+        lookupKey.key = key;
+        try {
+            return map.remove(lookupKey);
+        } finally {
+            lookupKey.key = null;
+        }
+    }
+
+    int size() {
+        expungeStaleEntries();
+        return map.size();
+    }
+
+    private void expungeStaleEntries() {
+        Reference<? extends K> reference;
+        while ((reference = referenceQueue.poll()) != null) {
+            map.remove(reference);
+        }
+    }
+
+    private static class WeakKey<K> extends WeakReference<K> {
+        private final int hashCode;
+
+        WeakKey(K key, ReferenceQueue<K> referenceQueue) {
+            super(key, referenceQueue);
+            this.hashCode = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) {
+                return true;
+            }
+            Object key = get();
+            if (key == null) {
+                return false;
+            }
+            if (other instanceof LookupKey) {
+                return key == ((LookupKey) other).key;
+            }
+            return other instanceof WeakKey && key == ((WeakKey<?>) other).get();
+        }
+    }
+
+    /**
+     * Key used for lookups, avoids creating a weak reference.
+     */
+    private static class LookupKey {
+        private Object key;
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other instanceof WeakKey) {
+                return key == ((WeakKey<?>) other).get();
+            }
+            return other instanceof LookupKey && key == ((LookupKey) other).key;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Fixture of tests executing calls against a {@link MockWebServer} which is started before and closed after
+ * every test. Spans are recorded by a new {@link MockTracer} for every test.
+ */
+public abstract class AbstractMockWebServerTest {
+
+    protected MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager(), MockTracer.Propagator.TEXT_MAP);
+    protected MockWebServer mockWebServer = new MockWebServer();
+
+    @Before
+    public void startServer() throws IOException {
+        mockWebServer.start();
+    }
+
+    @After
+    public void closeServer() throws IOException {
+        mockWebServer.close();
+    }
+
+    /**
+     * Execute a GET request of the path and close the response.
+     *
+     * @param client client
+     * @param path path relative to the server url
+     */
+    protected void execute(Call.Factory client, String path) throws IOException {
+        client.newCall(new Request.Builder()
+            .url(mockWebServer.url(path))
+            .build())
+            .execute()
+            .close();
+    }
+}
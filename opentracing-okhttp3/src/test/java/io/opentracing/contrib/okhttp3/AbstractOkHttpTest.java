@@ -93,6 +93,29 @@ public abstract class AbstractOkHttpTest {
         Assert.assertEquals(0, networkSpan.logEntries().size());
     }
 
+    @Test
+    public void testPeerTagsForIpAddress() throws IOException {
+        {
+            mockWebServer.enqueue(new MockResponse()
+                    .setResponseCode(200));
+
+            client.newCall(new Request.Builder()
+                    .url(mockWebServer.url("foo").newBuilder().host("127.0.0.1").build())
+                    .build())
+                    .execute();
+        }
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        assertOnErrors(mockSpans);
+
+        MockSpan networkSpan = mockSpans.get(0);
+        // hostname is not reverse resolved
+        Assert.assertEquals("127.0.0.1", networkSpan.tags().get(Tags.PEER_HOSTNAME.getKey()));
+        Assert.assertEquals(mockWebServer.getPort(), networkSpan.tags().get(Tags.PEER_PORT.getKey()));
+        Assert.assertEquals(ipv4ToInt("127.0.0.1"), networkSpan.tags().get(Tags.PEER_HOST_IPV4.getKey()));
+    }
+
     @Test
     public void testStandardTagsForPost() throws IOException {
         {
@@ -0,0 +1,173 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+
+public class CacheTest extends AbstractMockWebServerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private OkHttpClient okHttpClient;
+
+    @Before
+    public void before() throws IOException {
+        okHttpClient = new OkHttpClient.Builder()
+            .cache(new Cache(temporaryFolder.newFolder(), 1024 * 1024))
+            .build();
+    }
+
+    @After
+    public void after() throws IOException {
+        okHttpClient.cache().close();
+    }
+
+    @Test
+    public void testCacheTags() throws IOException {
+        Call.Factory client = new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withCacheTags(true)
+            .build();
+        enqueueResponses();
+        execute(client, "cached");
+        execute(client, "cached");
+        execute(client, "validated");
+        execute(client, "validated");
+
+        List<MockSpan> callSpans = callSpans();
+        Assert.assertEquals(4, callSpans.size());
+        Assert.assertEquals(OkHttpTags.CACHE_MISS, callSpans.get(0).tags().get(OkHttpTags.CACHE.getKey()));
+        Assert.assertEquals(OkHttpTags.CACHE_HIT, callSpans.get(1).tags().get(OkHttpTags.CACHE.getKey()));
+        Assert.assertEquals(OkHttpTags.CACHE_MISS, callSpans.get(2).tags().get(OkHttpTags.CACHE.getKey()));
+        Assert.assertEquals(OkHttpTags.CACHE_CONDITIONAL, callSpans.get(3).tags().get(OkHttpTags.CACHE.getKey()));
+        // the cache hit has no network span
+        Assert.assertEquals(7, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testCallFactorySkipCacheHits() throws IOException {
+        testSkipCacheHits(new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withCacheTags(true)
+            .withCacheHitSpans(false)
+            .build());
+    }
+
+    @Test
+    public void testSharedClientSkipCacheHits() throws IOException {
+        testSkipCacheHits(new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withCacheTags(true)
+            .withCacheHitSpans(false)
+            .withSharedClient(true)
+            .build());
+    }
+
+    @Test
+    public void testInterceptorSkipCacheHits() throws IOException {
+        testSkipCacheHits(TracingInterceptor.addTracing(okHttpClient.newBuilder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withCacheTags(true)
+                .withCacheHitSpans(false)
+                .build(), null));
+    }
+
+    @Test
+    public void testSingleSpanSkipCacheHits() throws IOException {
+        Call.Factory client = new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withCacheHitSpans(false)
+            .withSingleSpan(true)
+            .withSharedClient(true)
+            .build();
+        enqueueResponses();
+        execute(client, "cached");
+        execute(client, "cached");
+
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        Assert.assertEquals(1, spans.size());
+        Assert.assertEquals(200, spans.get(0).tags().get(Tags.HTTP_STATUS.getKey()));
+        Assert.assertEquals(mockWebServer.getPort(), spans.get(0).tags().get(Tags.PEER_PORT.getKey()));
+    }
+
+    @Test
+    public void testSkipCacheHitsError() throws IOException {
+        Call.Factory client = new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withCacheHitSpans(false)
+            .build();
+        try {
+            client.newCall(new Request.Builder()
+                .url("http://nonexisting.example.invalid")
+                .build())
+                .execute();
+            Assert.fail();
+        } catch (IOException ex) {
+        }
+
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        Assert.assertEquals(1, spans.size());
+        Assert.assertEquals(true, spans.get(0).tags().get(Tags.ERROR.getKey()));
+    }
+
+    private void testSkipCacheHits(Call.Factory client) throws IOException {
+        enqueueResponses();
+        Span parent = mockTracer.buildSpan("parent").start();
+        try (Scope scope = mockTracer.activateSpan(parent)) {
+            execute(client, "cached");
+            execute(client, "cached");
+            execute(client, "validated");
+            execute(client, "validated");
+        }
+        parent.finish();
+
+        List<MockSpan> callSpans = callSpans();
+        Assert.assertEquals(3, callSpans.size());
+        Assert.assertEquals(OkHttpTags.CACHE_MISS, callSpans.get(0).tags().get(OkHttpTags.CACHE.getKey()));
+        Assert.assertEquals(OkHttpTags.CACHE_MISS, callSpans.get(1).tags().get(OkHttpTags.CACHE.getKey()));
+        Assert.assertEquals(OkHttpTags.CACHE_CONDITIONAL, callSpans.get(2).tags().get(OkHttpTags.CACHE.getKey()));
+        for (MockSpan callSpan: callSpans) {
+            Assert.assertEquals(parent.context().toSpanId(), String.valueOf(callSpan.parentId()));
+        }
+        // call spans, network spans and parent
+        Assert.assertEquals(7, mockTracer.finishedSpans().size());
+        for (MockSpan span: mockTracer.finishedSpans()) {
+            Assert.assertEquals(parent.context().toTraceId(), String.valueOf(span.context().traceId()));
+        }
+    }
+
+    private void enqueueResponses() {
+        mockWebServer.enqueue(new MockResponse()
+            .setHeader("Cache-Control", "max-age=60")
+            .setBody("cached"));
+        mockWebServer.enqueue(new MockResponse()
+            .setHeader("Cache-Control", "no-cache")
+            .setHeader("ETag", "v1")
+            .setBody("validated"));
+        mockWebServer.enqueue(new MockResponse()
+            .setResponseCode(304));
+    }
+
+    private List<MockSpan> callSpans() {
+        List<MockSpan> callSpans = new ArrayList<>();
+        for (MockSpan mockSpan: mockTracer.finishedSpans()) {
+            if (!mockSpan.tags().containsKey(Tags.SPAN_KIND.getKey()) && !"parent".equals(mockSpan.operationName())) {
+                callSpans.add(mockSpan);
+            }
+        }
+        return callSpans;
+    }
+}
@@ -0,0 +1,235 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.References;
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.noop.NoopTracerFactory;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.SocketPolicy;
+
+public class ConnectionSpansTest extends AbstractMockWebServerTest {
+
+    private OkHttpClient okHttpClient = new OkHttpClient();
+
+    @Test
+    public void testCallFactory() throws IOException {
+        testConnectionSpans(new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withConnectionSpans(true)
+            .build());
+    }
+
+    @Test
+    public void testSharedClient() throws IOException {
+        testConnectionSpans(new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withConnectionSpans(true)
+            .withSharedClient(true)
+            .build());
+    }
+
+    @Test
+    public void testInterceptor() throws IOException {
+        testConnectionSpans(TracingInterceptor.addTracing(new OkHttpClient.Builder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withConnectionSpans(true)
+                .build(), null));
+    }
+
+    @Test
+    public void testDeferredCallFactory() throws IOException {
+        testConnectionSpans(new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withConnectionSpans(true)
+            .withCacheHitSpans(false)
+            .build());
+    }
+
+    @Test
+    public void testDeferredInterceptor() throws IOException {
+        testConnectionSpans(TracingInterceptor.addTracing(new OkHttpClient.Builder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withConnectionSpans(true)
+                .withCacheHitSpans(false)
+                .build(), null));
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        Call.Factory client = new TracingCallFactory(okHttpClient, mockTracer);
+        mockWebServer.enqueue(new MockResponse());
+        execute(client, "foo");
+
+        Assert.assertEquals(0, spans(ConnectionSpanListener.OPERATION_NAME).size());
+        Assert.assertNull(spans("GET").get(0).tags().get(OkHttpTags.CONNECTION_SPAN.getKey()));
+    }
+
+    @Test
+    public void testExcludedRoute() throws IOException {
+        TracingRoutes routes = new TracingRoutes.Builder()
+            .exclude(null, "/health")
+            .build();
+        assertNoConnectSpans(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withConnectionSpans(true)
+            .withSharedClient(true)
+            .withRoutes(routes)
+            .build(), "health");
+        assertNoConnectSpans(TracingInterceptor.addTracing(new OkHttpClient.Builder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withConnectionSpans(true)
+                .withRoutes(routes)
+                .build(), null), "health");
+    }
+
+    @Test
+    public void testRateLimited() throws IOException {
+        assertRateLimited(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withConnectionSpans(true)
+            .withSharedClient(true)
+            .withRateLimiter(new HostRateLimiter(0.001, 1))
+            .build());
+        assertRateLimited(TracingInterceptor.addTracing(new OkHttpClient.Builder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withConnectionSpans(true)
+                .withRateLimiter(new HostRateLimiter(0.001, 1))
+                .build(), null));
+    }
+
+    @Test
+    public void testNoopTracer() {
+        TracingOptions options = new TracingOptions(new TracingInterceptor.Builder(NoopTracerFactory.create())
+            .withConnectionSpans(true));
+        Call call = new OkHttpClient().newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build());
+
+        Assert.assertSame(EventListener.NONE, new ConnectionSpanListener.Factory(options, null).create(call));
+    }
+
+    @Test
+    public void testNotSampled() throws IOException {
+        SampledSpanPredicate notSampled = new SampledSpanPredicate() {
+            @Override
+            public boolean isSampled(Span span) {
+                return false;
+            }
+        };
+        assertNoConnectSpans(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withConnectionSpans(true)
+            .withSampledSpanPredicate(notSampled)
+            .build(), "foo");
+        assertNoConnectSpans(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withConnectionSpans(true)
+            .withSampledSpanPredicate(notSampled)
+            .withCacheHitSpans(false)
+            .build(), "foo");
+        assertNoConnectSpans(TracingInterceptor.addTracing(new OkHttpClient.Builder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withConnectionSpans(true)
+                .withSampledSpanPredicate(notSampled)
+                .build(), null), "foo");
+    }
+
+    @Test
+    public void testConnectFailed() throws IOException {
+        Call.Factory client = new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withConnectionSpans(true)
+            .build();
+        int port = mockWebServer.getPort();
+        mockWebServer.close();
+        try {
+            client.newCall(new Request.Builder()
+                .url("http://localhost:" + port)
+                .build())
+                .execute();
+            Assert.fail();
+        } catch (IOException ex) {
+        }
+
+        List<MockSpan> connectSpans = spans(ConnectionSpanListener.OPERATION_NAME);
+        Assert.assertEquals(1, connectSpans.size());
+        Assert.assertEquals(true, connectSpans.get(0).tags().get(Tags.ERROR.getKey()));
+    }
+
+    private void testConnectionSpans(Call.Factory client) throws IOException {
+        mockWebServer.enqueue(new MockResponse());
+        mockWebServer.enqueue(new MockResponse());
+        // the connect span is a child of the call span, not of the span active when the call is executed
+        MockSpan parentSpan = mockTracer.buildSpan("parent").start();
+        try (Scope scope = mockTracer.activateSpan(parentSpan)) {
+            execute(client, "foo");
+            execute(client, "foo");
+        }
+
+        List<MockSpan> connectSpans = spans(ConnectionSpanListener.OPERATION_NAME);
+        Assert.assertEquals(1, connectSpans.size());
+        MockSpan connectSpan = connectSpans.get(0);
+        Assert.assertEquals(mockWebServer.getPort(), connectSpan.tags().get(Tags.PEER_PORT.getKey()));
+        Assert.assertEquals("http/1.1", connectSpan.tags().get(OkHttpTags.PROTOCOL.getKey()));
+        Assert.assertFalse(connectSpan.logEntries().isEmpty());
+
+        List<MockSpan> callSpans = new ArrayList<>();
+        List<MockSpan> networkSpans = new ArrayList<>();
+        for (MockSpan span: spans("GET")) {
+            (span.tags().containsKey(Tags.SPAN_KIND.getKey()) ? networkSpans : callSpans).add(span);
+        }
+        Assert.assertEquals(2, networkSpans.size());
+        Assert.assertEquals(2, callSpans.size());
+        Assert.assertEquals(parentSpan.context().spanId(), callSpans.get(0).parentId());
+        Assert.assertEquals(callSpans.get(0).context().spanId(), connectSpan.parentId());
+
+        MockSpan first = networkSpans.get(0);
+        Assert.assertEquals(2, first.references().size());
+        Assert.assertEquals(References.FOLLOWS_FROM, first.references().get(1).getReferenceType());
+        Assert.assertEquals(connectSpan.context(), first.references().get(1).getContext());
+        Assert.assertNull(first.tags().get(OkHttpTags.CONNECTION_SPAN.getKey()));
+
+        MockSpan second = networkSpans.get(1);
+        Assert.assertEquals(1, second.references().size());
+        Assert.assertEquals(connectSpan.context().traceId() + ":" + connectSpan.context().spanId(),
+            second.tags().get(OkHttpTags.CONNECTION_SPAN.getKey()));
+    }
+
+    private void assertRateLimited(Call.Factory client) throws IOException {
+        // the first call is traced, its connection is closed
+        mockWebServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_END));
+        execute(client, "foo");
+        Assert.assertEquals(1, spans(ConnectionSpanListener.OPERATION_NAME).size());
+        mockTracer.reset();
+
+        assertNoConnectSpans(client, "foo");
+    }
+
+    /**
+     * Execute a call establishing a new connection with a span active on the thread.
+     */
+    private void assertNoConnectSpans(Call.Factory client, String path) throws IOException {
+        mockWebServer.enqueue(new MockResponse());
+        MockSpan parentSpan = mockTracer.buildSpan("parent").start();
+        try (Scope scope = mockTracer.activateSpan(parentSpan)) {
+            execute(client, path);
+        }
+
+        Assert.assertEquals(0, spans(ConnectionSpanListener.OPERATION_NAME).size());
+    }
+
+    private List<MockSpan> spans(String operationName) {
+        List<MockSpan> spans = new ArrayList<>();
+        for (MockSpan mockSpan: mockTracer.finishedSpans()) {
+            if (operationName.equals(mockSpan.operationName())) {
+                spans.add(mockSpan);
+            }
+        }
+        return spans;
+    }
+}
@@ -0,0 +1,58 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+
+public class ConnectionTagsTest extends AbstractMockWebServerTest {
+
+    private OkHttpClient okHttpClient = new OkHttpClient();
+    private Call.Factory client = new TracingCallFactory.Builder(okHttpClient, mockTracer)
+        .withDecorators(Arrays.asList(OkHttpClientSpanDecorator.STANDARD_TAGS,
+            OkHttpClientSpanDecorator.CONNECTION_TAGS))
+        .build();
+
+    @Test
+    public void testReusedConnection() throws IOException {
+        mockWebServer.enqueue(new MockResponse());
+        mockWebServer.enqueue(new MockResponse());
+        mockWebServer.enqueue(new MockResponse());
+        execute(client, "foo");
+        execute(client, "foo");
+        okHttpClient.connectionPool().evictAll();
+        execute(client, "foo");
+
+        List<MockSpan> networkSpans = networkSpans();
+        Assert.assertEquals(3, networkSpans.size());
+        Object connectionId = networkSpans.get(0).tags().get(OkHttpTags.CONNECTION_ID.getKey());
+        Assert.assertEquals("http/1.1", networkSpans.get(0).tags().get(OkHttpTags.PROTOCOL.getKey()));
+        Assert.assertEquals(false, networkSpans.get(0).tags().get(OkHttpTags.CONNECTION_REUSED.getKey()));
+
+        Assert.assertEquals(connectionId, networkSpans.get(1).tags().get(OkHttpTags.CONNECTION_ID.getKey()));
+        Assert.assertEquals(true, networkSpans.get(1).tags().get(OkHttpTags.CONNECTION_REUSED.getKey()));
+
+        Assert.assertNotEquals(connectionId, networkSpans.get(2).tags().get(OkHttpTags.CONNECTION_ID.getKey()));
+        Assert.assertEquals(false, networkSpans.get(2).tags().get(OkHttpTags.CONNECTION_REUSED.getKey()));
+        Assert.assertEquals(mockWebServer.getPort(), networkSpans.get(2).tags().get(Tags.PEER_PORT.getKey()));
+    }
+
+    private List<MockSpan> networkSpans() {
+        List<MockSpan> networkSpans = new ArrayList<>();
+        for (MockSpan mockSpan: mockTracer.finishedSpans()) {
+            if (mockSpan.tags().containsKey(Tags.SPAN_KIND.getKey())) {
+                networkSpans.add(mockSpan);
+            }
+        }
+        return networkSpans;
+    }
+}
@@ -0,0 +1,210 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+
+public class DispatcherTagsTest extends AbstractMockWebServerTest {
+
+    private Dispatcher dispatcher = new Dispatcher();
+
+    @Before
+    public void before() throws IOException {
+        dispatcher.setMaxRequests(1);
+    }
+
+    @Test
+    public void testCallFactoryAsync() throws InterruptedException {
+        Call.Factory client = new TracingCallFactory.Builder(
+            new OkHttpClient.Builder().dispatcher(dispatcher).build(), mockTracer)
+            .withDispatcherTags(true)
+            .build();
+
+        enqueue(client, 3);
+        assertQueueTags(callSpans());
+    }
+
+    @Test
+    public void testSharedCallFactoryAsync() throws InterruptedException {
+        Call.Factory client = new TracingCallFactory.Builder(
+            new OkHttpClient.Builder().dispatcher(dispatcher).build(), mockTracer)
+            .withSharedClient(true)
+            .withDispatcherTags(true)
+            .build();
+
+        enqueue(client, 3);
+        assertQueueTags(callSpans());
+    }
+
+    @Test
+    public void testInterceptorAsync() throws InterruptedException {
+        TracingInterceptor tracingInterceptor = new TracingInterceptor.Builder(mockTracer)
+            .withDispatcherTags(true)
+            .build();
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        try {
+            OkHttpClient client = TracingInterceptor.addTracing(new OkHttpClient.Builder().dispatcher(dispatcher),
+                tracingInterceptor, executorService);
+
+            enqueue(client, 3);
+            assertQueueTags(callSpans());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallFactoryAsyncOnCallingThread() throws InterruptedException {
+        Dispatcher dispatcher = new Dispatcher(new CallingThreadExecutor());
+        Call.Factory client = new TracingCallFactory.Builder(
+            new OkHttpClient.Builder().dispatcher(dispatcher).build(), mockTracer)
+            .withDispatcherTags(true)
+            .build();
+
+        // the calls run on the thread enqueuing them and are still tagged
+        enqueue(client, 3);
+        List<MockSpan> callSpans = callSpans();
+        Assert.assertEquals(3, callSpans.size());
+        for (MockSpan callSpan: callSpans) {
+            Assert.assertNotNull(callSpan.tags().get(OkHttpTags.QUEUE_WAIT.getKey()));
+            Assert.assertEquals(0, callSpan.tags().get(OkHttpTags.QUEUED_CALLS.getKey()));
+        }
+    }
+
+    @Test
+    public void testSyncNotTagged() throws IOException {
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withDispatcherTags(true)
+            .build();
+        mockWebServer.enqueue(new MockResponse());
+
+        client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build())
+            .execute()
+            .close();
+
+        List<MockSpan> callSpans = callSpans();
+        Assert.assertEquals(1, callSpans.size());
+        Assert.assertNull(callSpans.get(0).tags().get(OkHttpTags.QUEUE_WAIT.getKey()));
+        Assert.assertNull(callSpans.get(0).tags().get(OkHttpTags.QUEUED_CALLS.getKey()));
+    }
+
+    @Test
+    public void testSampler() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try (DispatcherSampler sampler = new DispatcherSampler(dispatcher, scheduler, 1, TimeUnit.HOURS)) {
+            sampler.sample();
+            sampler.sample();
+
+            DispatcherSampler.Snapshot snapshot = sampler.snapshotAndReset();
+            Assert.assertEquals(2, snapshot.getSamples());
+            Assert.assertEquals(0, snapshot.getMaxQueuedCalls());
+            Assert.assertEquals(0, snapshot.getMeanRunningCalls(), 0);
+            Assert.assertEquals(0, sampler.snapshot().getSamples());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void enqueue(Call.Factory client, int calls) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(calls);
+        for (int i = 0; i < calls; i++) {
+            mockWebServer.enqueue(new MockResponse()
+                .setBody("response")
+                .setBodyDelay(50, TimeUnit.MILLISECONDS));
+            client.newCall(new Request.Builder()
+                .url(mockWebServer.url("foo"))
+                .build())
+                .enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) throws IOException {
+                        // the call keeps its dispatcher slot until the callback returns
+                        response.body().string();
+                        latch.countDown();
+                    }
+                });
+        }
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    private List<MockSpan> callSpans() {
+        List<MockSpan> callSpans = new ArrayList<>();
+        for (MockSpan mockSpan: mockTracer.finishedSpans()) {
+            if (mockSpan.tags().get(Tags.SPAN_KIND.getKey()) == null) {
+                callSpans.add(mockSpan);
+            }
+        }
+        return callSpans;
+    }
+
+    private static void assertQueueTags(List<MockSpan> callSpans) {
+        Assert.assertEquals(3, callSpans.size());
+        long maxQueueWait = 0;
+        int maxQueuedCalls = 0;
+        for (MockSpan callSpan: callSpans) {
+            Assert.assertNotNull(callSpan.tags().get(OkHttpTags.RUNNING_CALLS.getKey()));
+            maxQueueWait = Math.max(maxQueueWait, (Long) callSpan.tags().get(OkHttpTags.QUEUE_WAIT.getKey()));
+            maxQueuedCalls = Math.max(maxQueuedCalls, (Integer) callSpan.tags().get(OkHttpTags.QUEUED_CALLS.getKey()));
+        }
+        // the last call waited for the two calls before it
+        Assert.assertTrue(String.valueOf(maxQueueWait), maxQueueWait >= TimeUnit.MILLISECONDS.toMicros(100));
+        Assert.assertTrue(maxQueuedCalls >= 1);
+    }
+
+    private static class CallingThreadExecutor extends AbstractExecutorService {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+}
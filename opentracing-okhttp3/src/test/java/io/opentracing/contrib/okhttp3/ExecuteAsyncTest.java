@@ -0,0 +1,193 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import okhttp3.Cache;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+
+public class ExecuteAsyncTest extends AbstractMockWebServerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private OkHttpClient okHttpClient = new OkHttpClient();
+
+    @Test
+    public void testCallSpanActiveInStages() throws Exception {
+        testCallSpanActiveInStages(new TracingCallFactory(okHttpClient, mockTracer));
+    }
+
+    @Test
+    public void testSharedClientCallSpanActiveInStages() throws Exception {
+        testCallSpanActiveInStages(new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withSharedClient(true)
+            .build());
+    }
+
+    @Test
+    public void testDeferredCallSpanActiveInStages() throws Exception {
+        testCallSpanActiveInStages(new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withCacheHitSpans(false)
+            .build());
+    }
+
+    @Test
+    public void testCacheHitActivatesParent() throws Exception {
+        // the dispatcher runs the call only after the stage is added
+        final CountDownLatch stageAdded = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    stageAdded.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        OkHttpClient cachingClient = okHttpClient.newBuilder()
+            .cache(new Cache(temporaryFolder.newFolder(), 1024 * 1024))
+            .dispatcher(new Dispatcher(executor))
+            .build();
+        TracingCallFactory client = new TracingCallFactory.Builder(cachingClient, mockTracer)
+            .withCacheHitSpans(false)
+            .build();
+        mockWebServer.enqueue(new MockResponse()
+            .setHeader("Cache-Control", "max-age=60")
+            .setBody("cached"));
+        execute(client, "cached");
+        Assert.assertEquals(2, mockTracer.finishedSpans().size());
+
+        final AtomicReference<Span> activeSpan = new AtomicReference<>();
+        Span parent = mockTracer.buildSpan("parent").start();
+        CompletableFuture<Response> future;
+        try (Scope scope = mockTracer.activateSpan(parent)) {
+            future = client.executeAsync(new Request.Builder()
+                .url(mockWebServer.url("cached"))
+                .build())
+                .whenComplete(new BiConsumer<Response, Throwable>() {
+                    @Override
+                    public void accept(Response response, Throwable throwable) {
+                        activeSpan.set(mockTracer.activeSpan());
+                    }
+                });
+        }
+        stageAdded.countDown();
+        future.get(10, TimeUnit.SECONDS).close();
+        parent.finish();
+        cachingClient.cache().close();
+        executor.shutdown();
+
+        // the cache hit has no call span, the span active when the call was created is activated instead
+        Assert.assertEquals(3, mockTracer.finishedSpans().size());
+        Assert.assertEquals(((MockSpan) parent).context().spanId(), ((MockSpan) activeSpan.get()).context().spanId());
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        TracingCallFactory client = new TracingCallFactory(okHttpClient, mockTracer);
+        int port = mockWebServer.getPort();
+        mockWebServer.close();
+
+        CompletableFuture<Response> future = client.executeAsync(new Request.Builder()
+            .url("http://localhost:" + port)
+            .build());
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException ex) {
+            Assert.assertTrue(ex.getCause() instanceof IOException);
+        }
+        Assert.assertEquals(1, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        TracingCallFactory client = new TracingCallFactory(okHttpClient, mockTracer);
+        mockWebServer.enqueue(new MockResponse()
+            .setHeadersDelay(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Response> future = client.executeAsync(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build());
+        future.cancel(false);
+
+        // the call fails before the delayed response headers are received
+        long start = System.nanoTime();
+        while (callSpan() == null && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+            Thread.sleep(10);
+        }
+        Assert.assertNotNull(callSpan());
+        Assert.assertEquals(true, callSpan().tags().get(Tags.ERROR.getKey()));
+    }
+
+    private MockSpan callSpan() {
+        for (MockSpan span: mockTracer.finishedSpans()) {
+            if (!span.tags().containsKey(Tags.SPAN_KIND.getKey())) {
+                return span;
+            }
+        }
+        return null;
+    }
+
+    private void testCallSpanActiveInStages(TracingCallFactory client) throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+            .setHeadersDelay(100, TimeUnit.MILLISECONDS));
+        final AtomicReference<Span> activeSpan = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Span parent = mockTracer.buildSpan("parent").start();
+        CompletableFuture<Integer> future;
+        try (Scope scope = mockTracer.activateSpan(parent)) {
+            future = client.executeAsync(new Request.Builder()
+                .url(mockWebServer.url("foo"))
+                .build())
+                .thenApply(new Function<Response, Integer>() {
+                    @Override
+                    public Integer apply(Response response) {
+                        activeSpan.set(mockTracer.activeSpan());
+                        response.close();
+                        return response.code();
+                    }
+                });
+        }
+        parent.finish();
+        Assert.assertEquals(200, future.get(10, TimeUnit.SECONDS).intValue());
+        Assert.assertNull(mockTracer.activeSpan());
+
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        Assert.assertEquals(3, spans.size());
+        MockSpan callSpan = null;
+        for (MockSpan span: spans) {
+            if (span.parentId() == ((MockSpan) parent).context().spanId()) {
+                callSpan = span;
+            }
+        }
+        Assert.assertNotNull(callSpan);
+        Assert.assertEquals(callSpan.context().spanId(), ((MockSpan) activeSpan.get()).context().spanId());
+    }
+}
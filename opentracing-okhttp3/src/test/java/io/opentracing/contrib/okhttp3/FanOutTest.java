@@ -0,0 +1,155 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class FanOutTest extends AbstractMockWebServerTest {
+
+    private TracingCallFactory client = new TracingCallFactory(new OkHttpClient(), mockTracer);
+
+    @Before
+    public void before() throws IOException {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if ("/slow".equals(request.getPath())) {
+                    Thread.sleep(200);
+                }
+                return new MockResponse();
+            }
+        });
+    }
+
+    @Test
+    public void testFanOut() throws Exception {
+        int closedPort;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            closedPort = serverSocket.getLocalPort();
+        }
+        List<Request> requests = Arrays.asList(
+            new Request.Builder().url(mockWebServer.url("fast")).build(),
+            new Request.Builder().url(mockWebServer.url("slow")).build(),
+            new Request.Builder().url("http://localhost:" + closedPort).build());
+
+        Span parent = mockTracer.buildSpan("parent").start();
+        FanOutResult result;
+        try (Scope scope = mockTracer.activateSpan(parent)) {
+            result = client.executeAll(requests).get(10, TimeUnit.SECONDS);
+        }
+        parent.finish();
+        result.close();
+
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals(200, result.getResponse(0).code());
+        Assert.assertEquals(200, result.getResponse(1).code());
+        Assert.assertNull(result.getResponse(2));
+        Assert.assertNotNull(result.getError(2));
+        Assert.assertEquals(1, result.getFailures());
+        Assert.assertEquals(1, result.getSlowestIndex());
+        Assert.assertTrue(result.getLatencyMicros(1) >= TimeUnit.MILLISECONDS.toMicros(200));
+
+        MockSpan fanOutSpan = null;
+        for (MockSpan span: mockTracer.finishedSpans()) {
+            if (FanOut.OPERATION_NAME.equals(span.operationName())) {
+                fanOutSpan = span;
+            }
+        }
+        Assert.assertNotNull(fanOutSpan);
+        Assert.assertEquals(((MockSpan) parent).context().spanId(), fanOutSpan.parentId());
+        Assert.assertEquals(3, fanOutSpan.tags().get(OkHttpTags.FAN_OUT_SIZE.getKey()));
+        Assert.assertEquals(1, fanOutSpan.tags().get(OkHttpTags.FAN_OUT_FAILURES.getKey()));
+        Assert.assertEquals(1, fanOutSpan.tags().get(OkHttpTags.FAN_OUT_SLOWEST_INDEX.getKey()));
+        Assert.assertEquals(true, fanOutSpan.tags().get(Tags.ERROR.getKey()));
+        Assert.assertEquals(3, fanOutSpan.logEntries().size());
+        Assert.assertEquals(FanOut.MEMBER_EVENT, fanOutSpan.logEntries().get(2).fields().get("event"));
+        Assert.assertEquals(true, fanOutSpan.logEntries().get(2).fields().get(Tags.ERROR.getKey()));
+
+        int callSpans = 0;
+        for (MockSpan span: mockTracer.finishedSpans()) {
+            if (span.parentId() == fanOutSpan.context().spanId()) {
+                callSpans++;
+            }
+        }
+        Assert.assertEquals(3, callSpans);
+        // parent, fan-out, 3 call spans and 2 network spans
+        Assert.assertEquals(7, mockTracer.finishedSpans().size());
+    }
+
+    @Test
+    public void testCallCreationFails() throws Exception {
+        testCallCreationFails(true);
+    }
+
+    @Test
+    public void testDeferredCallCreationFails() throws Exception {
+        testCallCreationFails(false);
+    }
+
+    private void testCallCreationFails(boolean cacheHitSpans) throws Exception {
+        TracingCallFactory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withCacheHitSpans(cacheHitSpans)
+            .withOperationNameStrategy(new OperationNameStrategy() {
+                @Override
+                public String operationName(Request request) {
+                    if ("/fail".equals(request.url().encodedPath())) {
+                        throw new IllegalStateException("operation name");
+                    }
+                    return request.method();
+                }
+            })
+            .build();
+        List<Request> requests = Arrays.asList(
+            new Request.Builder().url(mockWebServer.url("fast")).build(),
+            new Request.Builder().url(mockWebServer.url("fail")).build());
+
+        CompletableFuture<FanOutResult> future = client.executeAll(requests);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException ex) {
+            Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+
+        // the span of the call created for the first request is finished before the fan-out span
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, spans.size());
+        MockSpan callSpan = spans.get(0);
+        MockSpan fanOutSpan = spans.get(1);
+        Assert.assertEquals("GET", callSpan.operationName());
+        Assert.assertEquals(fanOutSpan.context().spanId(), callSpan.parentId());
+        Assert.assertEquals(FanOut.OPERATION_NAME, fanOutSpan.operationName());
+        for (MockSpan span: spans) {
+            Assert.assertEquals(Boolean.TRUE, span.tags().get(Tags.ERROR.getKey()));
+            Assert.assertEquals(1, span.logEntries().size());
+        }
+        Assert.assertEquals(0, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        FanOutResult result = client.executeAll(Collections.<Request>emptyList()).get();
+        Assert.assertEquals(0, result.size());
+        Assert.assertEquals(-1, result.getSlowestIndex());
+        Assert.assertEquals(1, mockTracer.finishedSpans().size());
+    }
+}
@@ -0,0 +1,184 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+
+public class GuardedSpanDecoratorTest extends AbstractMockWebServerTest {
+
+    private TestClock clock = new TestClock();
+
+    @Test
+    public void testThrowingDecorator() throws IOException {
+        GuardedSpanDecorator decorator = new GuardedSpanDecorator.Builder(new TestDecorator(0, true))
+            .withMaxErrorRate(1)
+            .build();
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withDecorators(Arrays.asList(decorator, OkHttpClientSpanDecorator.STANDARD_TAGS))
+            .build();
+
+        mockWebServer.enqueue(new MockResponse()
+            .setResponseCode(202));
+        client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build())
+            .execute()
+            .close();
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        Assert.assertEquals(202, mockSpans.get(0).tags().get(Tags.HTTP_STATUS.getKey()));
+        GuardedSpanDecorator.Stats stats = decorator.getStats();
+        Assert.assertEquals(2, stats.getInvocations());
+        Assert.assertEquals(2, stats.getErrors());
+        Assert.assertEquals(0, stats.getDisabledCount());
+    }
+
+    @Test
+    public void testDisabledOnErrorRate() {
+        TestDecorator delegate = new TestDecorator(0, true);
+        GuardedSpanDecorator decorator = new GuardedSpanDecorator.Builder(delegate)
+            .withWindow(10)
+            .withMaxErrorRate(0.5)
+            .build();
+        Span span = mockTracer.buildSpan("foo").start();
+        for (int i = 0; i < 20; i++) {
+            decorator.onRequest(null, span);
+        }
+
+        Assert.assertEquals(10, delegate.invocations.get());
+        GuardedSpanDecorator.Stats stats = decorator.getStats();
+        Assert.assertTrue(stats.isDisabled());
+        Assert.assertEquals(1, stats.getDisabledCount());
+        Assert.assertEquals(10, stats.getInvocations());
+        Assert.assertEquals(10, stats.getErrors());
+        Assert.assertEquals(10, stats.getSkipped());
+    }
+
+    @Test
+    public void testDisabledOnTimeBudget() {
+        TestDecorator delegate = new TestDecorator(2, false);
+        GuardedSpanDecorator decorator = new GuardedSpanDecorator.Builder(delegate)
+            .withWindow(2)
+            .withTimeBudget(1, TimeUnit.MILLISECONDS)
+            .withDisableDuration(100, TimeUnit.MILLISECONDS)
+            .withClock(clock)
+            .build();
+        Span span = mockTracer.buildSpan("foo").start();
+        for (int i = 0; i < 4; i++) {
+            decorator.onResponse(null, null, span);
+        }
+        Assert.assertEquals(2, delegate.invocations.get());
+        GuardedSpanDecorator.Stats stats = decorator.getStats();
+        Assert.assertTrue(stats.isDisabled());
+        Assert.assertEquals(1, stats.getDisabledCount());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(4), stats.getTotalNanos());
+
+        // enabled again after the disable duration
+        clock.advance(99, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(decorator.getStats().isDisabled());
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        Assert.assertFalse(decorator.getStats().isDisabled());
+        decorator.onResponse(null, null, span);
+        Assert.assertEquals(3, delegate.invocations.get());
+    }
+
+    @Test
+    public void testDisabledOnMaxInvocationTime() {
+        TestDecorator delegate = new TestDecorator(20, false);
+        GuardedSpanDecorator decorator = new GuardedSpanDecorator.Builder(delegate)
+            .withMaxInvocationTime(10, TimeUnit.MILLISECONDS)
+            .withDisableDuration(100, TimeUnit.MILLISECONDS)
+            .withClock(clock)
+            .build();
+        Span span = mockTracer.buildSpan("foo").start();
+        decorator.onRequest(null, span);
+        decorator.onResponse(null, null, span);
+
+        // disabled after a single invocation, long before the window is complete
+        Assert.assertEquals(1, delegate.invocations.get());
+        GuardedSpanDecorator.Stats stats = decorator.getStats();
+        Assert.assertTrue(stats.isDisabled());
+        Assert.assertEquals(1, stats.getDisabledCount());
+        Assert.assertEquals(1, stats.getSkipped());
+    }
+
+    @Test
+    public void testWithinBudget() {
+        TestDecorator delegate = new TestDecorator(0, false);
+        GuardedSpanDecorator decorator = new GuardedSpanDecorator.Builder(delegate)
+            .withWindow(10)
+            .build();
+        Span span = mockTracer.buildSpan("foo").start();
+        for (int i = 0; i < 100; i++) {
+            decorator.onError(new IOException(), span);
+        }
+        Assert.assertEquals(100, delegate.invocations.get());
+        GuardedSpanDecorator.Stats stats = decorator.getStats();
+        Assert.assertFalse(stats.isDisabled());
+        Assert.assertEquals(0, stats.getDisabledCount());
+        Assert.assertEquals(0, stats.getSkipped());
+    }
+
+    private static class TestClock implements GuardedSpanDecorator.Clock {
+        private long nanos;
+
+        @Override
+        public long nanoTime() {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit) {
+            nanos += unit.toNanos(duration);
+        }
+    }
+
+    private class TestDecorator implements OkHttpClientSpanDecorator {
+        private final long durationMillis;
+        private final boolean fail;
+        private final AtomicInteger invocations = new AtomicInteger();
+
+        TestDecorator(long durationMillis, boolean fail) {
+            this.durationMillis = durationMillis;
+            this.fail = fail;
+        }
+
+        @Override
+        public void onRequest(Request request, Span span) {
+            invoke();
+        }
+
+        @Override
+        public void onError(Throwable throwable, Span span) {
+            invoke();
+        }
+
+        @Override
+        public void onResponse(Connection connection, Response response, Span span) {
+            invoke();
+        }
+
+        private void invoke() {
+            invocations.incrementAndGet();
+            clock.advance(durationMillis, TimeUnit.MILLISECONDS);
+            if (fail) {
+                throw new IllegalStateException("decorator failed");
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class HostRateLimiterTest extends AbstractMockWebServerTest {
+
+    @Test
+    public void testBurst() {
+        HostRateLimiter rateLimiter = new HostRateLimiter(0.001, 2);
+        Assert.assertTrue(rateLimiter.tryAcquire("a"));
+        Assert.assertTrue(rateLimiter.tryAcquire("a"));
+        Assert.assertFalse(rateLimiter.tryAcquire("a"));
+        Assert.assertTrue(rateLimiter.tryAcquire("b"));
+
+        Assert.assertEquals(1, rateLimiter.getSuppressedCount());
+        Assert.assertEquals(1, rateLimiter.getSuppressedCount("a"));
+        Assert.assertEquals(0, rateLimiter.getSuppressedCount("b"));
+    }
+
+    @Test
+    public void testRefill() throws InterruptedException {
+        HostRateLimiter rateLimiter = new HostRateLimiter(100, 1);
+        Assert.assertTrue(rateLimiter.tryAcquire("a"));
+        Assert.assertFalse(rateLimiter.tryAcquire("a"));
+        Thread.sleep(20);
+        Assert.assertTrue(rateLimiter.tryAcquire("a"));
+    }
+
+    @Test
+    public void testMaxHostsShareBucket() {
+        HostRateLimiter rateLimiter = new HostRateLimiter(0.001, 1, 1);
+        Assert.assertTrue(rateLimiter.tryAcquire("a"));
+        Assert.assertTrue(rateLimiter.tryAcquire("b"));
+        Assert.assertFalse(rateLimiter.tryAcquire("c"));
+        Assert.assertEquals(1, rateLimiter.getSuppressedCount("b"));
+    }
+
+    @Test
+    public void testCallFactory() throws IOException, InterruptedException {
+        assertPropagatedWhenSuppressed(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withRateLimiter(new HostRateLimiter(0.001, 1))
+            .build());
+    }
+
+    @Test
+    public void testSharedCallFactory() throws IOException, InterruptedException {
+        assertPropagatedWhenSuppressed(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withSharedClient(true)
+            .withRateLimiter(new HostRateLimiter(0.001, 1))
+            .build());
+    }
+
+    @Test
+    public void testInterceptor() throws IOException, InterruptedException {
+        assertPropagatedWhenSuppressed(TracingInterceptor.addTracing(new OkHttpClient.Builder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withRateLimiter(new HostRateLimiter(0.001, 1))
+                .build(), null));
+    }
+
+    private void assertPropagatedWhenSuppressed(Call.Factory client) throws IOException, InterruptedException {
+        Span parent = mockTracer.buildSpan("parent").start();
+        try (Scope scope = mockTracer.activateSpan(parent)) {
+            execute(client);
+            execute(client);
+        }
+        parent.finish();
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(3, mockSpans.size());
+        RecordedRequest traced = mockWebServer.takeRequest();
+        RecordedRequest suppressed = mockWebServer.takeRequest();
+        Assert.assertEquals(String.valueOf(mockSpans.get(0).context().spanId()), traced.getHeader("spanid"));
+        Assert.assertEquals(String.valueOf(parent.context().toSpanId()), suppressed.getHeader("spanid"));
+        Assert.assertEquals(parent.context().toTraceId(), suppressed.getHeader("traceid"));
+    }
+
+    private void execute(Call.Factory client) throws IOException {
+        mockWebServer.enqueue(new MockResponse());
+        execute(client, "foo");
+    }
+}
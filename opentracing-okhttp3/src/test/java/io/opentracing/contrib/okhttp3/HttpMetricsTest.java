@@ -0,0 +1,176 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.noop.NoopTracerFactory;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+
+public class HttpMetricsTest extends AbstractMockWebServerTest {
+
+    @Test
+    public void testPerHost() throws IOException {
+        HttpMetrics metrics = new HttpMetrics();
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withMetrics(metrics)
+            .build();
+        mockWebServer.enqueue(new MockResponse());
+        mockWebServer.enqueue(new MockResponse());
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+        execute(client, "users/1");
+        execute(client, "users/2");
+        execute(client, "orders");
+
+        Map<String, HttpMetrics.Snapshot> snapshots = report(metrics);
+        Assert.assertEquals(1, snapshots.size());
+        HttpMetrics.Snapshot snapshot = snapshots.get(mockWebServer.getHostName());
+        Assert.assertEquals(3, snapshot.getRequests());
+        Assert.assertEquals(1, snapshot.getErrors());
+        Assert.assertEquals(HttpMetrics.BUCKET_BOUNDS_MICROS.length + 1, snapshot.getBucketCounts().length);
+        long bucketSum = 0;
+        for (long count: snapshot.getBucketCounts()) {
+            bucketSum += count;
+        }
+        Assert.assertEquals(3, bucketSum);
+        Assert.assertTrue(snapshot.getSumMicros() > 0);
+    }
+
+    @Test
+    public void testPerRoute() throws IOException {
+        HttpMetrics metrics = new HttpMetrics(true, 2);
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withOperationNameStrategy(new UrlTemplateOperationName())
+            .withFinishOnResponseBody(true)
+            .withMetrics(metrics)
+            .build();
+        for (int i = 0; i < 4; i++) {
+            mockWebServer.enqueue(new MockResponse().setBody("body"));
+        }
+        execute(client, "users/1");
+        execute(client, "users/2");
+        execute(client, "orders");
+        execute(client, "items");
+
+        Map<String, HttpMetrics.Snapshot> snapshots = report(metrics);
+        Assert.assertEquals(3, snapshots.size());
+        Assert.assertEquals(2, snapshots.get(mockWebServer.getHostName() + " GET /users/{id}").getRequests());
+        Assert.assertEquals(1, snapshots.get(mockWebServer.getHostName() + " GET /orders").getRequests());
+        Assert.assertEquals(1, snapshots.get(HttpMetrics.OTHER_KEY).getRequests());
+    }
+
+    @Test
+    public void testFailedCall() throws IOException {
+        HttpMetrics metrics = new HttpMetrics();
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withMetrics(metrics)
+            .build();
+        int port = mockWebServer.getPort();
+        mockWebServer.close();
+        try {
+            client.newCall(new Request.Builder()
+                .url("http://localhost:" + port)
+                .build())
+                .execute();
+            Assert.fail();
+        } catch (IOException ex) {
+        }
+
+        HttpMetrics.Snapshot snapshot = report(metrics).get("localhost");
+        Assert.assertEquals(1, snapshot.getRequests());
+        Assert.assertEquals(1, snapshot.getErrors());
+    }
+
+    @Test
+    public void testRateLimitedCallFactory() throws IOException {
+        HttpMetrics metrics = new HttpMetrics();
+        assertRateLimited(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withRateLimiter(new HostRateLimiter(0.001, 1))
+            .withMetrics(metrics)
+            .build(), metrics);
+    }
+
+    @Test
+    public void testRateLimitedInterceptor() throws IOException {
+        HttpMetrics metrics = new HttpMetrics();
+        assertRateLimited(TracingInterceptor.addTracing(new OkHttpClient.Builder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withRateLimiter(new HostRateLimiter(0.001, 1))
+                .withMetrics(metrics)
+                .build(), null), metrics);
+    }
+
+    private void assertRateLimited(Call.Factory client, HttpMetrics metrics) throws IOException {
+        mockWebServer.enqueue(new MockResponse());
+        mockWebServer.enqueue(new MockResponse());
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+        execute(client, "users/1");
+        execute(client, "users/2");
+        execute(client, "orders");
+
+        // only the first call is traced
+        Assert.assertEquals(2, mockTracer.finishedSpans().size());
+        HttpMetrics.Snapshot snapshot = report(metrics).get(mockWebServer.getHostName());
+        Assert.assertEquals(3, snapshot.getRequests());
+        Assert.assertEquals(1, snapshot.getErrors());
+    }
+
+    @Test
+    public void testExcludedRoute() throws IOException {
+        assertExcludedRouteMeasured(false);
+    }
+
+    @Test
+    public void testExcludedRouteSharedClient() throws IOException {
+        assertExcludedRouteMeasured(true);
+    }
+
+    private void assertExcludedRouteMeasured(boolean sharedClient) throws IOException {
+        HttpMetrics metrics = new HttpMetrics();
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withSharedClient(sharedClient)
+            .withRoutes(new TracingRoutes.Builder()
+                .exclude(null, "/health")
+                .build())
+            .withMetrics(metrics)
+            .build();
+        mockWebServer.enqueue(new MockResponse());
+        mockWebServer.enqueue(new MockResponse());
+        execute(client, "health");
+        execute(client, "users/1");
+
+        Assert.assertEquals(2, mockTracer.finishedSpans().size());
+        Assert.assertEquals(2, report(metrics).get(mockWebServer.getHostName()).getRequests());
+    }
+
+    @Test
+    public void testNoopTracer() throws IOException {
+        HttpMetrics metrics = new HttpMetrics();
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), NoopTracerFactory.create())
+            .withMetrics(metrics)
+            .build();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+        execute(client, "users/1");
+
+        HttpMetrics.Snapshot snapshot = report(metrics).get(mockWebServer.getHostName());
+        Assert.assertEquals(1, snapshot.getRequests());
+        Assert.assertEquals(1, snapshot.getErrors());
+    }
+
+    private static Map<String, HttpMetrics.Snapshot> report(HttpMetrics metrics) {
+        final Map<String, HttpMetrics.Snapshot> snapshots = new HashMap<>();
+        metrics.report(new MetricsSink() {
+            @Override
+            public void report(String key, HttpMetrics.Snapshot snapshot) {
+                snapshots.put(key, snapshot);
+            }
+        });
+        return snapshots;
+    }
+}
@@ -0,0 +1,153 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class InjectedHeadersTest extends AbstractMockWebServerTest {
+
+    private final AtomicInteger injections = new AtomicInteger();
+
+    public InjectedHeadersTest() {
+        mockTracer = new MockTracer(new ThreadLocalScopeManager(), new MockTracer.Propagator() {
+            @Override
+            public <C> void inject(MockSpan.MockContext ctx, Format<C> format, C carrier) {
+                injections.incrementAndGet();
+                MockTracer.Propagator.TEXT_MAP.inject(ctx, format, carrier);
+            }
+
+            @Override
+            public <C> MockSpan.MockContext extract(Format<C> format, C carrier) {
+                return MockTracer.Propagator.TEXT_MAP.extract(format, carrier);
+            }
+        });
+    }
+
+    @Test
+    public void testStaleHeadersReplaced() throws IOException, InterruptedException {
+        mockWebServer.enqueue(new MockResponse());
+        TracingCallFactory client = new TracingCallFactory(new OkHttpClient(), mockTracer);
+        client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .header("traceid", "1")
+            .header("spanid", "2")
+            .build())
+            .execute()
+            .close();
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        MockSpan networkSpan = mockSpans.get(0);
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        Assert.assertEquals(1, recordedRequest.getHeaders().values("traceid").size());
+        Assert.assertEquals(String.valueOf(networkSpan.context().traceId()), recordedRequest.getHeader("traceid"));
+        Assert.assertEquals(1, recordedRequest.getHeaders().values("spanid").size());
+        Assert.assertEquals(String.valueOf(networkSpan.context().spanId()), recordedRequest.getHeader("spanid"));
+    }
+
+    @Test
+    public void testCachedPerContext() {
+        Span span = mockTracer.buildSpan("parent").start();
+        Request request = new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build();
+
+        InjectedHeaders injectedHeaders = new InjectedHeaders(mockTracer);
+        RequestBuilderInjectAdapter injectAdapter = new RequestBuilderInjectAdapter(request, null);
+        injectedHeaders.inject(span.context(), injectAdapter);
+        Request injected = injectAdapter.request();
+        Assert.assertNotSame(request, injected);
+        Assert.assertEquals(String.valueOf(span.context().toSpanId()), injected.header("spanid"));
+
+        // same context is not serialized again and an already propagated request is not rebuilt
+        injectAdapter = new RequestBuilderInjectAdapter(injected, null);
+        injectedHeaders.inject(span.context(), injectAdapter);
+        Assert.assertSame(injected, injectAdapter.request());
+        Assert.assertEquals(1, injections.get());
+
+        Span other = mockTracer.buildSpan("other").start();
+        injectAdapter = new RequestBuilderInjectAdapter(injected, null);
+        injectedHeaders.inject(other.context(), injectAdapter);
+        Assert.assertEquals(String.valueOf(other.context().toSpanId()), injectAdapter.request().header("spanid"));
+        Assert.assertEquals(1, injectAdapter.request().headers("spanid").size());
+        Assert.assertEquals(2, injections.get());
+    }
+
+    @Test
+    public void testUntracedCalls() throws IOException, InterruptedException {
+        Assert.assertEquals(2, untracedCallInjections(false));
+        injections.set(0);
+        Assert.assertEquals(1, untracedCallInjections(true));
+    }
+
+    private int untracedCallInjections(boolean injectedHeadersCache) throws IOException, InterruptedException {
+        HostRateLimiter rateLimiter = new HostRateLimiter(0.001, 1);
+        rateLimiter.tryAcquire(mockWebServer.getHostName());
+        TracingCallFactory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withRateLimiter(rateLimiter)
+            .withInjectedHeadersCache(injectedHeadersCache)
+            .build();
+        Span parent = mockTracer.buildSpan("parent").start();
+        try (Scope scope = mockTracer.activateSpan(parent)) {
+            for (int i = 0; i < 2; i++) {
+                mockWebServer.enqueue(new MockResponse());
+                client.newCall(new Request.Builder()
+                    .url(mockWebServer.url("foo"))
+                    .build())
+                    .execute()
+                    .close();
+                Assert.assertEquals(String.valueOf(parent.context().toSpanId()),
+                    mockWebServer.takeRequest().getHeader("spanid"));
+            }
+        }
+        return injections.get();
+    }
+
+    @Test
+    public void testUnsampledCallsNotCached() throws IOException, InterruptedException {
+        TracingOptions options = new TracingOptions(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withInjectedHeadersCache(true)
+            .withSampledSpanPredicate(new SampledSpanPredicate() {
+                @Override
+                public boolean isSampled(Span span) {
+                    return false;
+                }
+            }));
+        for (int i = 0; i < 2; i++) {
+            Span span = mockTracer.buildSpan("call").start();
+            OkHttpClient client = new OkHttpClient.Builder()
+                .addNetworkInterceptor(new TracingCallFactory.NetworkInterceptor(span, null, options, null))
+                .build();
+            mockWebServer.enqueue(new MockResponse());
+            execute(client, "foo");
+            span.finish();
+            Assert.assertEquals(String.valueOf(span.context().toSpanId()),
+                mockWebServer.takeRequest().getHeader("spanid"));
+        }
+        Assert.assertEquals(2, injections.get());
+        Assert.assertEquals(0, options.injectedHeaders.size());
+    }
+
+    @Test
+    public void testNothingInjected() {
+        Request request = new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build();
+        RequestBuilderInjectAdapter injectAdapter = new RequestBuilderInjectAdapter(request, null);
+        Assert.assertSame(request, injectAdapter.request());
+    }
+}
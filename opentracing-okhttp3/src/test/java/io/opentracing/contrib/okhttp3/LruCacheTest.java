@@ -0,0 +1,32 @@
+package io.opentracing.contrib.okhttp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LruCacheTest {
+
+    @Test
+    public void testBounded() {
+        LruCache<Integer, Integer> cache = new LruCache<>(64);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+        Assert.assertEquals(64, cache.size());
+        Assert.assertEquals(Integer.valueOf(9999), cache.get(9999));
+        Assert.assertNull(cache.get(0));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        // keys 0, 16 and 32 fall into the same segment of size 2
+        LruCache<Integer, String> cache = new LruCache<>(32);
+        cache.put(0, "a");
+        cache.put(16, "b");
+        cache.get(0);
+        cache.put(32, "c");
+
+        Assert.assertEquals("a", cache.get(0));
+        Assert.assertNull(cache.get(16));
+        Assert.assertEquals("c", cache.get(32));
+    }
+}
@@ -0,0 +1,98 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okio.BufferedSink;
+
+public class PayloadSizesTest extends AbstractMockWebServerTest {
+
+    private Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+        .withPayloadSizes(true)
+        .build();
+
+    @Test
+    public void testUnknownRequestLength() throws IOException, InterruptedException {
+        mockWebServer.enqueue(new MockResponse()
+            .setBody("response"));
+
+        client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .post(new RequestBody() {
+                @Override
+                public MediaType contentType() {
+                    return MediaType.parse("text/plain");
+                }
+
+                @Override
+                public void writeTo(BufferedSink sink) throws IOException {
+                    for (int i = 0; i < 1000; i++) {
+                        sink.writeUtf8("0123456789");
+                    }
+                }
+            })
+            .build())
+            .execute()
+            .close();
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        AbstractOkHttpTest.assertOnErrors(mockSpans);
+        Assert.assertEquals(10000L, mockSpans.get(0).tags().get(OkHttpTags.HTTP_REQUEST_SIZE.getKey()));
+        Assert.assertEquals(8L, mockSpans.get(0).tags().get(OkHttpTags.HTTP_RESPONSE_SIZE.getKey()));
+        Assert.assertEquals(10000, mockWebServer.takeRequest().getBodySize());
+    }
+
+    @Test
+    public void testUnknownResponseLength() throws IOException {
+        mockWebServer.enqueue(new MockResponse()
+            .setChunkedBody("chunked response", 4));
+
+        Response response = client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build())
+            .execute();
+        Assert.assertEquals(-1, response.body().contentLength());
+        // the call span is finished, the network span is finished at the end of the body
+        Assert.assertEquals(1, mockTracer.finishedSpans().size());
+        Assert.assertEquals("chunked response", response.body().string());
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        AbstractOkHttpTest.assertOnErrors(mockSpans);
+        MockSpan networkSpan = mockSpans.get(1);
+        Assert.assertEquals(Tags.SPAN_KIND_CLIENT, networkSpan.tags().get(Tags.SPAN_KIND.getKey()));
+        Assert.assertEquals(16L, networkSpan.tags().get(OkHttpTags.HTTP_RESPONSE_SIZE.getKey()));
+    }
+
+    @Test
+    public void testKnownRequestLength() throws IOException {
+        mockWebServer.enqueue(new MockResponse()
+            .setBody("response"));
+
+        client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .post(RequestBody.create(MediaType.parse("text/plain"), "request"))
+            .build())
+            .execute()
+            .close();
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        AbstractOkHttpTest.assertOnErrors(mockSpans);
+        Assert.assertEquals(7L, mockSpans.get(0).tags().get(OkHttpTags.HTTP_REQUEST_SIZE.getKey()));
+        Assert.assertEquals(8L, mockSpans.get(0).tags().get(OkHttpTags.HTTP_RESPONSE_SIZE.getKey()));
+    }
+}
@@ -0,0 +1,46 @@
+package io.opentracing.contrib.okhttp3;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrefixTrieTest {
+
+    private PrefixTrie<String> trie = new PrefixTrie.Builder<String>()
+        .put(null, "/health", "health")
+        .put(null, "/api/", "api")
+        .put(null, "/api/users", "users")
+        .put("example.com", "/api", "example")
+        .build();
+
+    @Test
+    public void testSegmentBoundary() {
+        Assert.assertEquals("health", trie.lookup("localhost", "/health"));
+        Assert.assertEquals("health", trie.lookup("localhost", "/health/live"));
+        Assert.assertNull(trie.lookup("localhost", "/healthz"));
+        Assert.assertNull(trie.lookup("localhost", "/"));
+    }
+
+    @Test
+    public void testLongestPrefix() {
+        Assert.assertEquals("api", trie.lookup("localhost", "/api/orders"));
+        Assert.assertEquals("users", trie.lookup("localhost", "/api/users/1"));
+        Assert.assertEquals("api", trie.lookup("localhost", "/api/usersx"));
+        Assert.assertNull(trie.lookup("localhost", "/api"));
+    }
+
+    @Test
+    public void testHost() {
+        Assert.assertEquals("example", trie.lookup("example.com", "/api/users/1"));
+        Assert.assertEquals("health", trie.lookup("example.com", "/health"));
+    }
+
+    @Test
+    public void testRoot() {
+        PrefixTrie<String> trie = new PrefixTrie.Builder<String>()
+            .put("example.com", "/", "all")
+            .build();
+        Assert.assertEquals("all", trie.lookup("example.com", "/"));
+        Assert.assertEquals("all", trie.lookup("example.com", "/foo/bar"));
+        Assert.assertNull(trie.lookup("localhost", "/foo"));
+    }
+}
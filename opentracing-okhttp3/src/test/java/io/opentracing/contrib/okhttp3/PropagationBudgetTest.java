@@ -0,0 +1,146 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class PropagationBudgetTest extends AbstractMockWebServerTest {
+
+    @Test
+    public void testDenyAndTruncate() throws IOException, InterruptedException {
+        PropagationBudget budget = new PropagationBudget.Builder()
+            .withMaxValueLength(10)
+            .deny("baggage-secret")
+            .build();
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withPropagationBudget(budget)
+            .build();
+
+        Span parent = mockTracer.buildSpan("parent").start()
+            .setBaggageItem("secret", "foo")
+            .setBaggageItem("large", "aaaaaaaaaaaaaaaaaaaa");
+        execute(client, parent);
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        Assert.assertNull(recordedRequest.getHeader("baggage-secret"));
+        Assert.assertEquals("aaaaaaaaaa", recordedRequest.getHeader("baggage-large"));
+        Assert.assertNotNull(recordedRequest.getHeader("traceid"));
+        Assert.assertNotNull(recordedRequest.getHeader("spanid"));
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(3, mockSpans.size());
+        MockSpan networkSpan = mockSpans.get(0);
+        Assert.assertEquals(1, networkSpan.tags().get(OkHttpTags.PROPAGATION_DROPPED.getKey()));
+        Assert.assertEquals(1, networkSpan.tags().get(OkHttpTags.PROPAGATION_TRUNCATED.getKey()));
+        Assert.assertNull(mockSpans.get(1).tags().get(OkHttpTags.PROPAGATION_DROPPED.getKey()));
+        Assert.assertEquals(1, budget.getDroppedCount());
+        Assert.assertEquals(1, budget.getTruncatedCount());
+    }
+
+    @Test
+    public void testMaxHeaders() throws IOException, InterruptedException {
+        PropagationBudget budget = new PropagationBudget.Builder()
+            .withMaxHeaders(3)
+            .build();
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withPropagationBudget(budget)
+            .build();
+
+        Span parent = mockTracer.buildSpan("parent").start()
+            .setBaggageItem("foo", "bar")
+            .setBaggageItem("baz", "qux");
+        execute(client, parent);
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        int injected = 0;
+        for (String name: new String[] {"traceid", "spanid", "baggage-foo", "baggage-baz"}) {
+            if (recordedRequest.getHeader(name) != null) {
+                injected++;
+            }
+        }
+        Assert.assertEquals(3, injected);
+        Assert.assertEquals(1, mockTracer.finishedSpans().get(0).tags()
+            .get(OkHttpTags.PROPAGATION_DROPPED.getKey()));
+        Assert.assertEquals(1, budget.getDroppedCount());
+        Assert.assertEquals(0, budget.getTruncatedCount());
+    }
+
+    @Test
+    public void testMaxBytesUntraced() throws IOException, InterruptedException {
+        PropagationBudget budget = new PropagationBudget.Builder()
+            .allow("traceid")
+            .allow("spanid")
+            .allow("baggage-*")
+            .withMaxBytes(64)
+            .build();
+        HostRateLimiter rateLimiter = new HostRateLimiter(0.001, 1);
+        rateLimiter.tryAcquire(mockWebServer.getHostName());
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withPropagationBudget(budget)
+            .withRateLimiter(rateLimiter)
+            .build();
+
+        Span parent = mockTracer.buildSpan("parent").start()
+            .setBaggageItem("large", new String(new char[64]).replace('\0', 'a'));
+        execute(client, parent);
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        Assert.assertEquals(String.valueOf(((MockSpan) parent).context().spanId()),
+            recordedRequest.getHeader("spanid"));
+        Assert.assertNull(recordedRequest.getHeader("baggage-large"));
+        Assert.assertEquals(1, mockTracer.finishedSpans().size());
+        Assert.assertEquals(1, budget.getDroppedCount());
+    }
+
+    @Test
+    public void testAlwaysInjected() throws IOException, InterruptedException {
+        PropagationBudget budget = new PropagationBudget.Builder()
+            .always("traceid")
+            .always("spanid")
+            .withMaxHeaders(1)
+            .withMaxBytes(24)
+            .withMaxValueLength(4)
+            .build();
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withPropagationBudget(budget)
+            .build();
+
+        Span parent = mockTracer.buildSpan("parent").start()
+            .setBaggageItem("foo", "bar")
+            .setBaggageItem("large", new String(new char[64]).replace('\0', 'a'));
+        execute(client, parent);
+
+        // trace context values are longer than the maximum value length and do not use the budget of baggage
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        MockSpan networkSpan = mockTracer.finishedSpans().get(0);
+        Assert.assertEquals(String.valueOf(networkSpan.context().traceId()), recordedRequest.getHeader("traceid"));
+        Assert.assertEquals(String.valueOf(networkSpan.context().spanId()), recordedRequest.getHeader("spanid"));
+        int baggage = 0;
+        for (String name: new String[] {"baggage-foo", "baggage-large"}) {
+            if (recordedRequest.getHeader(name) != null) {
+                baggage++;
+            }
+        }
+        Assert.assertEquals(1, baggage);
+        Assert.assertEquals(1, budget.getDroppedCount());
+    }
+
+    private void execute(Call.Factory client, Span parent) throws IOException {
+        mockWebServer.enqueue(new MockResponse());
+        try (Scope scope = mockTracer.activateSpan(parent)) {
+            execute(client, "foo");
+        } finally {
+            parent.finish();
+        }
+    }
+}
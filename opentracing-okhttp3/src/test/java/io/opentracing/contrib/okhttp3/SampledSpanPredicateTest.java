@@ -0,0 +1,115 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.noop.NoopTracerFactory;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class SampledSpanPredicateTest extends AbstractMockWebServerTest {
+
+    private static final SampledSpanPredicate NOT_SAMPLED = new SampledSpanPredicate() {
+        @Override
+        public boolean isSampled(Span span) {
+            return false;
+        }
+    };
+
+
+    @Test
+    public void testCallFactoryNotSampled() throws IOException, InterruptedException {
+        execute(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withSampledSpanPredicate(NOT_SAMPLED)
+            .withFinishOnResponseBody(true)
+            .withPayloadSizes(true)
+            .build());
+
+        assertPropagatedOnly();
+    }
+
+    @Test
+    public void testSharedCallFactoryNotSampled() throws IOException, InterruptedException {
+        execute(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withSampledSpanPredicate(NOT_SAMPLED)
+            .withSharedClient(true)
+            .build());
+
+        assertPropagatedOnly();
+    }
+
+    @Test
+    public void testInterceptorNotSampled() throws IOException, InterruptedException {
+        TracingInterceptor tracingInterceptor = new TracingInterceptor.Builder(mockTracer)
+            .withSampledSpanPredicate(NOT_SAMPLED)
+            .build();
+        execute(TracingInterceptor.addTracing(new OkHttpClient.Builder(), tracingInterceptor, null));
+
+        assertPropagatedOnly();
+    }
+
+    @Test
+    public void testNoopTracerNotInstrumented() throws IOException, InterruptedException {
+        Object tag = new Object();
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), NoopTracerFactory.create())
+            .withSharedClient(true)
+            .build();
+        Call call = client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .tag(tag)
+            .build());
+
+        Assert.assertSame(tag, call.request().tag());
+    }
+
+    @Test
+    public void testNoopTracerDeferredNotInstrumented() {
+        Object tag = new Object();
+        Request request = new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .tag(tag)
+            .build();
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), NoopTracerFactory.create())
+            .withSharedClient(true)
+            .withCacheHitSpans(false)
+            .build();
+
+        Assert.assertSame(request, client.newCall(request).request());
+    }
+
+    @Test
+    public void testNoopTracerInterceptor() throws IOException, InterruptedException {
+        execute(TracingInterceptor.addTracing(new OkHttpClient.Builder(), NoopTracerFactory.create()));
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        Assert.assertNull(recordedRequest.getHeader("traceid"));
+    }
+
+    private void execute(Call.Factory client) throws IOException {
+        mockWebServer.enqueue(new MockResponse()
+            .setBody("response"));
+        execute(client, "foo");
+    }
+
+    private void assertPropagatedOnly() throws InterruptedException {
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(1, mockSpans.size());
+        MockSpan callSpan = mockSpans.get(0);
+        Assert.assertEquals(1, callSpan.tags().size());
+        Assert.assertEquals(TracingCallFactory.COMPONENT_NAME, callSpan.tags().get(Tags.COMPONENT.getKey()));
+        Assert.assertEquals(0, callSpan.logEntries().size());
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        Assert.assertEquals(String.valueOf(callSpan.context().traceId()), recordedRequest.getHeader("traceid"));
+        Assert.assertEquals(String.valueOf(callSpan.context().spanId()), recordedRequest.getHeader("spanid"));
+    }
+}
@@ -0,0 +1,91 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class SingleSpanTest extends AbstractMockWebServerTest {
+
+    @Test
+    public void testCallFactory() throws IOException, InterruptedException {
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withSingleSpan(true)
+            .build();
+        assertSingleHop(client);
+        assertRedirect(client);
+    }
+
+    @Test
+    public void testSharedCallFactory() throws IOException, InterruptedException {
+        Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withSharedClient(true)
+            .withSingleSpan(true)
+            .build();
+        assertSingleHop(client);
+        assertRedirect(client);
+    }
+
+    @Test
+    public void testInterceptor() throws IOException, InterruptedException {
+        OkHttpClient client = TracingInterceptor.addTracing(new OkHttpClient.Builder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withSingleSpan(true)
+                .build(), null);
+        assertSingleHop(client);
+        assertRedirect(client);
+    }
+
+    private void assertSingleHop(Call.Factory client) throws IOException, InterruptedException {
+        mockWebServer.enqueue(new MockResponse()
+            .setResponseCode(202));
+        execute(client, "foo");
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(1, mockSpans.size());
+        MockSpan span = mockSpans.get(0);
+        Assert.assertEquals(Tags.SPAN_KIND_CLIENT, span.tags().get(Tags.SPAN_KIND.getKey()));
+        Assert.assertEquals(TracingCallFactory.COMPONENT_NAME, span.tags().get(Tags.COMPONENT.getKey()));
+        Assert.assertEquals(mockWebServer.url("foo").toString(), span.tags().get(Tags.HTTP_URL.getKey()));
+        Assert.assertEquals(202, span.tags().get(Tags.HTTP_STATUS.getKey()));
+        Assert.assertEquals(mockWebServer.getPort(), span.tags().get(Tags.PEER_PORT.getKey()));
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        Assert.assertEquals(String.valueOf(span.context().spanId()), recordedRequest.getHeader("spanid"));
+        mockTracer.reset();
+    }
+
+    private void assertRedirect(Call.Factory client) throws IOException, InterruptedException {
+        mockWebServer.enqueue(new MockResponse()
+            .setResponseCode(301)
+            .setHeader("Location", "/redirect"));
+        mockWebServer.enqueue(new MockResponse()
+            .setResponseCode(200));
+        execute(client, "foo");
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        MockSpan hopSpan = mockSpans.get(0);
+        MockSpan callSpan = mockSpans.get(1);
+        Assert.assertEquals(callSpan.context().spanId(), hopSpan.parentId());
+        Assert.assertEquals(mockWebServer.url("redirect").toString(), hopSpan.tags().get(Tags.HTTP_URL.getKey()));
+        Assert.assertEquals(200, callSpan.tags().get(Tags.HTTP_STATUS.getKey()));
+        Assert.assertEquals(1, callSpan.logEntries().size());
+        Assert.assertEquals(TracingCallFactory.NETWORK_HOP, callSpan.logEntries().get(0).fields().get("event"));
+        Assert.assertEquals(2, callSpan.logEntries().get(0).fields().get("hop"));
+
+        Assert.assertEquals(String.valueOf(callSpan.context().spanId()),
+            mockWebServer.takeRequest().getHeader("spanid"));
+        Assert.assertEquals(String.valueOf(hopSpan.context().spanId()),
+            mockWebServer.takeRequest().getHeader("spanid"));
+        mockTracer.reset();
+    }
+}
@@ -0,0 +1,177 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class SlowCallThresholdTest extends AbstractMockWebServerTest {
+
+    private Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+        .withSlowCallThreshold(100, TimeUnit.MILLISECONDS)
+        .build();
+
+    @Before
+    public void before() throws IOException {
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if ("/slow".equals(request.getPath())) {
+                    Thread.sleep(150);
+                }
+                if ("/error".equals(request.getPath())) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                return new MockResponse();
+            }
+        });
+    }
+
+    @Test
+    public void testFastCallNotReported() throws Exception {
+        execute(client, "fast");
+
+        // spans are finished without buffered tags and logs, the tracer is asked not to report them
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, spans.size());
+        for (MockSpan span: spans) {
+            Assert.assertEquals(0, span.tags().get(Tags.SAMPLING_PRIORITY.getKey()));
+            Assert.assertNull(span.tags().get(Tags.HTTP_STATUS.getKey()));
+            Assert.assertEquals(0, span.logEntries().size());
+        }
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        Assert.assertNotNull(recordedRequest.getHeader("traceid"));
+        Assert.assertNotNull(recordedRequest.getHeader("spanid"));
+    }
+
+    @Test
+    public void testSlowCallReported() throws Exception {
+        testSlowCallReported(client);
+    }
+
+    @Test
+    public void testInterceptorSlowCallReported() throws Exception {
+        testSlowCallReported(TracingInterceptor.addTracing(new OkHttpClient.Builder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withSlowCallThreshold(100, TimeUnit.MILLISECONDS)
+                .build(), null));
+    }
+
+    @Test
+    public void testFailedCallReported() throws IOException {
+        int closedPort;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            closedPort = serverSocket.getLocalPort();
+        }
+        try {
+            client.newCall(new Request.Builder()
+                .url("http://localhost:" + closedPort)
+                .build())
+                .execute();
+            Assert.fail();
+        } catch (IOException ex) {
+        }
+
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        Assert.assertEquals(1, spans.size());
+        Assert.assertEquals(true, spans.get(0).tags().get(Tags.ERROR.getKey()));
+        Assert.assertEquals(1, spans.get(0).logEntries().size());
+    }
+
+    @Test
+    public void testServerErrorReported() throws IOException {
+        execute(client, "error");
+
+        // the network span has the status code, its parent call span is kept with it
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, spans.size());
+        Assert.assertEquals(503, spans.get(0).tags().get(Tags.HTTP_STATUS.getKey()));
+        Assert.assertEquals(spans.get(1).context().spanId(), spans.get(0).parentId());
+    }
+
+    @Test
+    public void testDelegateSpansActivated() throws IOException {
+        MockTracer tracer = new MockTracer(new ThreadLocalScopeManager() {
+            @Override
+            public Scope activate(Span span) {
+                if (!(span instanceof MockSpan)) {
+                    throw new IllegalArgumentException("Unsupported span " + span);
+                }
+                return super.activate(span);
+            }
+        }, MockTracer.Propagator.TEXT_MAP);
+
+        execute(new TracingCallFactory.Builder(new OkHttpClient(), tracer)
+            .withSlowCallThreshold(100, TimeUnit.MILLISECONDS)
+            .build(), "slow");
+        Assert.assertEquals(2, tracer.finishedSpans().size());
+        tracer.reset();
+
+        SlowCallTracer slowCallTracer = new SlowCallTracer(tracer, TimeUnit.SECONDS.toMicros(10));
+        Span parent = slowCallTracer.buildSpan("parent").start();
+        try (Scope scope = slowCallTracer.activateSpan(parent)) {
+            Assert.assertSame(parent, slowCallTracer.activeSpan());
+            slowCallTracer.buildSpan("child").start()
+                .setTag(Tags.ERROR, true)
+                .finish();
+        }
+        Assert.assertNull(slowCallTracer.activeSpan());
+        parent.finish();
+
+        // the parent is kept with the failed child of the active span
+        List<MockSpan> spans = tracer.finishedSpans();
+        Assert.assertEquals(2, spans.size());
+        Assert.assertEquals(spans.get(1).context().spanId(), spans.get(0).parentId());
+        Assert.assertNull(spans.get(1).tags().get(Tags.SAMPLING_PRIORITY.getKey()));
+    }
+
+    @Test
+    public void testClockRelativeToStart() {
+        long startMicros = 1000;
+        Span span = new SlowCallTracer(mockTracer, 0).buildSpan("span")
+            .withStartTimestamp(startMicros)
+            .start();
+        span.log("event");
+        span.finish();
+
+        MockSpan mockSpan = mockTracer.finishedSpans().get(0);
+        Assert.assertEquals(startMicros, mockSpan.startMicros());
+        long logMicros = mockSpan.logEntries().get(0).timestampMicros();
+        Assert.assertTrue(logMicros >= startMicros && logMicros < startMicros + TimeUnit.SECONDS.toMicros(10));
+        Assert.assertTrue(mockSpan.finishMicros() >= logMicros);
+    }
+
+    private void testSlowCallReported(Call.Factory client) throws Exception {
+        execute(client, "slow");
+
+        List<MockSpan> spans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, spans.size());
+        MockSpan networkSpan = spans.get(0);
+        MockSpan callSpan = spans.get(1);
+        Assert.assertEquals(callSpan.context().spanId(), networkSpan.parentId());
+        Assert.assertEquals(200, networkSpan.tags().get(Tags.HTTP_STATUS.getKey()));
+        Assert.assertEquals(mockWebServer.getPort(), networkSpan.tags().get(Tags.PEER_PORT.getKey()));
+        Assert.assertTrue(networkSpan.finishMicros() - networkSpan.startMicros()
+            >= TimeUnit.MILLISECONDS.toMicros(100));
+
+        RecordedRequest recordedRequest = mockWebServer.takeRequest();
+        Assert.assertEquals(String.valueOf(networkSpan.context().spanId()), recordedRequest.getHeader("spanid"));
+    }
+}
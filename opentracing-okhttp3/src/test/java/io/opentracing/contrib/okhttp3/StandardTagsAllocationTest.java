@@ -0,0 +1,97 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.noop.NoopSpan;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+
+/**
+ * The built-in decorators do not allocate in steady state when they decorate a span which does not allocate itself.
+ * Only the decorators are measured, a traced call allocates its spans, request tags and interceptors, and the tracer
+ * usually allocates when it records tags.
+ */
+public class StandardTagsAllocationTest extends AbstractMockWebServerTest {
+    private static final int ITERATIONS = 10000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private Request request;
+    private Response response;
+    private Connection connection;
+
+    @Before
+    public void before() throws IOException {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(202));
+        OkHttpClient client = new OkHttpClient.Builder()
+            .addNetworkInterceptor(new Interceptor() {
+                @Override
+                public Response intercept(Chain chain) throws IOException {
+                    request = chain.request();
+                    connection = chain.connection();
+                    response = chain.proceed(chain.request());
+                    return response;
+                }
+            })
+            .build();
+        client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build())
+            .execute()
+            .close();
+    }
+
+    @Test
+    public void testDecoratorsAllocationFree() {
+        final OkHttpClientSpanDecorator[] decorators = Arrays.asList(OkHttpClientSpanDecorator.STANDARD_TAGS,
+            OkHttpClientSpanDecorator.CONNECTION_TAGS).toArray(new OkHttpClientSpanDecorator[0]);
+        long maxAllocated = maxAllocatedPerRound(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    for (OkHttpClientSpanDecorator decorator: decorators) {
+                        decorator.onRequest(request, NoopSpan.INSTANCE);
+                        decorator.onResponse(connection, response, NoopSpan.INSTANCE);
+                    }
+                }
+            }
+        });
+        // less than a byte per decorated span in every steady state round
+        Assert.assertTrue("allocated " + maxAllocated + " bytes", maxAllocated < ITERATIONS);
+    }
+
+    /**
+     * @return maximum number of bytes allocated by the task in a steady state round
+     */
+    private static long maxAllocatedPerRound(Runnable task) {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        long threadId = Thread.currentThread().getId();
+        // warm up caches and the JIT compiler
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            task.run();
+        }
+        long maxAllocated = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            task.run();
+            maxAllocated = Math.max(maxAllocated, threadMXBean.getThreadAllocatedBytes(threadId) - before);
+        }
+        return maxAllocated;
+    }
+}
@@ -0,0 +1,39 @@
+package io.opentracing.contrib.okhttp3;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+
+public class TracingCallFactorySharedClientTest extends AbstractOkHttpTest {
+
+    public TracingCallFactorySharedClientTest() {
+        super(new TracingCallFactory.Builder(new OkHttpClient(), AbstractOkHttpTest.mockTracer)
+            .withSharedClient(true)
+            .build());
+    }
+
+    @Test
+    public void testUserTagPreserved() throws IOException {
+        mockWebServer.enqueue(new MockResponse()
+            .setResponseCode(200));
+
+        Call call = client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .tag("user-tag")
+            .build());
+        try (Response response = call.execute()) {
+            Assert.assertEquals(200, response.code());
+        }
+
+        Assert.assertTrue(call.request().tag() instanceof TagWrapper);
+        Assert.assertEquals("user-tag", ((TagWrapper) call.request().tag()).getTag());
+        Assert.assertEquals(2, mockTracer.finishedSpans().size());
+    }
+}
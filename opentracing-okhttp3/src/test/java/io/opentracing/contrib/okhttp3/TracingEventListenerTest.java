@@ -0,0 +1,170 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.mock.MockSpan;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+
+public class TracingEventListenerTest extends AbstractMockWebServerTest {
+
+    @Test
+    public void testPhaseLogs() throws IOException {
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+            .eventListenerFactory(new TracingEventListener.Factory(mockTracer))
+            .build();
+        execute(new TracingCallFactory(okHttpClient, mockTracer));
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        AbstractOkHttpTest.assertOnErrors(mockSpans);
+
+        List<Object> events = new ArrayList<>();
+        long previousMicros = 0;
+        for (MockSpan.LogEntry logEntry: mockSpans.get(1).logEntries()) {
+            events.add(logEntry.fields().get("event"));
+            Assert.assertTrue(logEntry.timestampMicros() >= previousMicros);
+            previousMicros = logEntry.timestampMicros();
+        }
+        Assert.assertTrue(events.toString(), events.contains(TracingEventListener.DNS_START));
+        Assert.assertTrue(events.toString(), events.contains(TracingEventListener.CONNECT_START));
+        Assert.assertTrue(events.toString(), events.contains(TracingEventListener.CONNECT_END));
+        Assert.assertTrue(events.toString(), events.indexOf(TracingEventListener.CONNECTION_ACQUIRE_START)
+            < events.indexOf(TracingEventListener.DNS_START));
+        Assert.assertTrue(events.toString(), events.indexOf(TracingEventListener.CONNECTION_ACQUIRE_END)
+            > events.indexOf(TracingEventListener.CONNECT_END));
+        Assert.assertTrue(events.toString(), events.contains(TracingEventListener.REQUEST_HEADERS_END));
+        Assert.assertTrue(events.toString(), events.contains(TracingEventListener.RESPONSE_HEADERS_END));
+        Assert.assertEquals(0, mockSpans.get(0).logEntries().size());
+    }
+
+    @Test
+    public void testPhaseChildSpans() throws IOException {
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+            .eventListenerFactory(new TracingEventListener.Factory(mockTracer, true))
+            .build();
+        execute(TracingInterceptor.addTracing(okHttpClient.newBuilder(), mockTracer));
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        AbstractOkHttpTest.assertOnErrors(mockSpans);
+        MockSpan callSpan = mockSpans.get(mockSpans.size() - 1);
+
+        Map<String, MockSpan> phaseSpans = new HashMap<>();
+        for (MockSpan mockSpan: mockSpans) {
+            if (mockSpan.parentId() == callSpan.context().spanId()) {
+                phaseSpans.put(mockSpan.operationName(), mockSpan);
+            }
+        }
+        Assert.assertTrue(phaseSpans.toString(), phaseSpans.containsKey("dns"));
+        Assert.assertTrue(phaseSpans.toString(), phaseSpans.containsKey("connect"));
+        Assert.assertTrue(phaseSpans.toString(), phaseSpans.containsKey("request.headers"));
+        Assert.assertTrue(phaseSpans.toString(), phaseSpans.containsKey("response.headers"));
+        MockSpan connectSpan = phaseSpans.get("connect");
+        // span timestamps are based on System.currentTimeMillis()
+        Assert.assertTrue(connectSpan.startMicros() >= callSpan.startMicros() - 1000);
+        Assert.assertTrue(connectSpan.finishMicros() <= callSpan.finishMicros() + 1000);
+        MockSpan acquireSpan = phaseSpans.get("connection.acquire");
+        Assert.assertNotNull(phaseSpans.toString(), acquireSpan);
+        Assert.assertTrue(acquireSpan.startMicros() <= connectSpan.startMicros());
+        Assert.assertTrue(acquireSpan.finishMicros() >= connectSpan.finishMicros());
+    }
+
+    @Test
+    public void testPooledConnectionAcquired() throws IOException {
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+            .eventListenerFactory(new TracingEventListener.Factory(mockTracer))
+            .build();
+        Call.Factory client = new TracingCallFactory(okHttpClient, mockTracer);
+        execute(client);
+        execute(client);
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(4, mockSpans.size());
+        List<Object> events = new ArrayList<>();
+        for (MockSpan.LogEntry logEntry: mockSpans.get(3).logEntries()) {
+            events.add(logEntry.fields().get("event"));
+        }
+        // the connection of the first call is reused without connecting
+        Assert.assertTrue(events.toString(), events.contains(TracingEventListener.CONNECTION_ACQUIRE_END));
+        Assert.assertFalse(events.toString(), events.contains(TracingEventListener.CONNECTION_ACQUIRE_START));
+        Assert.assertFalse(events.toString(), events.contains(TracingEventListener.CONNECT_START));
+    }
+
+    @Test
+    public void testDelegateNotified() throws IOException {
+        final List<Call> started = new ArrayList<>();
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+            .eventListenerFactory(new TracingEventListener.Factory(mockTracer, false, new okhttp3.EventListener.Factory() {
+                @Override
+                public okhttp3.EventListener create(Call call) {
+                    return new okhttp3.EventListener() {
+                        @Override
+                        public void callStart(Call call) {
+                            started.add(call);
+                        }
+                    };
+                }
+            }))
+            .build();
+        execute(new TracingCallFactory(okHttpClient, mockTracer));
+
+        Assert.assertEquals(1, started.size());
+    }
+
+    @Test
+    public void testUntracedCallsDiscarded() throws IOException {
+        TracingEventListener.Factory listenerFactory = new TracingEventListener.Factory(mockTracer);
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+            .eventListenerFactory(listenerFactory)
+            .build();
+        HostRateLimiter rateLimiter = new HostRateLimiter(0.001, 1);
+        rateLimiter.tryAcquire(mockWebServer.getHostName());
+        Call.Factory client = new TracingCallFactory.Builder(okHttpClient, mockTracer)
+            .withRoutes(new TracingRoutes.Builder()
+                .exclude(null, "/health")
+                .build())
+            .withRateLimiter(rateLimiter)
+            .build();
+
+        // neither call is executed
+        client.newCall(new Request.Builder()
+            .url(mockWebServer.url("health"))
+            .build());
+        client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build());
+        Assert.assertEquals(0, listenerFactory.listeners.size());
+    }
+
+    @Test
+    public void testInterceptorUntracedCallDiscarded() throws IOException {
+        TracingEventListener.Factory listenerFactory = new TracingEventListener.Factory(mockTracer);
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+            .eventListenerFactory(listenerFactory)
+            .build();
+        execute(TracingInterceptor.addTracing(okHttpClient.newBuilder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withRoutes(new TracingRoutes.Builder()
+                    .exclude(null, "/foo")
+                    .build())
+                .build(), null));
+
+        Assert.assertEquals(0, mockTracer.finishedSpans().size());
+        Assert.assertEquals(0, listenerFactory.listeners.size());
+    }
+
+    private void execute(Call.Factory client) throws IOException {
+        mockWebServer.enqueue(new MockResponse()
+            .setResponseCode(200));
+        execute(client, "foo");
+    }
+}
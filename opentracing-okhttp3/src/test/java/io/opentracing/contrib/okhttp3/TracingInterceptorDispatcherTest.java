@@ -0,0 +1,107 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+
+/**
+ * Runs tests with the dispatcher of the client builder kept unchanged.
+ */
+public class TracingInterceptorDispatcherTest extends AbstractOkHttpTest {
+
+    public TracingInterceptorDispatcherTest() {
+        super(TracingInterceptor.addTracing(new OkHttpClient.Builder(), AbstractOkHttpTest.mockTracer,
+            Collections.singletonList(OkHttpClientSpanDecorator.STANDARD_TAGS), null));
+    }
+
+    @Test
+    public void testKeepsDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        OkHttpClient client = TracingInterceptor.addTracing(new OkHttpClient.Builder().dispatcher(dispatcher),
+            mockTracer, Collections.singletonList(OkHttpClientSpanDecorator.STANDARD_TAGS), null);
+        Assert.assertSame(dispatcher, client.dispatcher());
+    }
+
+    @Test
+    public void testExecutorKeepsLimits() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(200);
+        dispatcher.setMaxRequestsPerHost(50);
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        try {
+            OkHttpClient client = TracingInterceptor.addTracing(new OkHttpClient.Builder().dispatcher(dispatcher),
+                mockTracer, Collections.singletonList(OkHttpClientSpanDecorator.STANDARD_TAGS), executorService);
+            Assert.assertNotSame(dispatcher, client.dispatcher());
+            Assert.assertEquals(200, client.dispatcher().getMaxRequests());
+            Assert.assertEquals(50, client.dispatcher().getMaxRequestsPerHost());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallbackParentOfPromotedCall() throws InterruptedException {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(1);
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        try {
+            OkHttpClient client = TracingInterceptor.addTracing(new OkHttpClient.Builder().dispatcher(dispatcher),
+                mockTracer, Collections.singletonList(OkHttpClientSpanDecorator.STANDARD_TAGS), executorService);
+            final CountDownLatch latch = new CountDownLatch(2);
+            final Map<String, String> callbackSpans = new ConcurrentHashMap<>();
+            // the second call waits in the queue and is promoted on the thread of the first call
+            for (final String name: new String[] {"first", "second"}) {
+                mockWebServer.enqueue(new MockResponse()
+                    .setHeadersDelay(100, TimeUnit.MILLISECONDS));
+                Span parent = mockTracer.buildSpan(name).start();
+                try (Scope scope = mockTracer.activateSpan(parent)) {
+                    client.newCall(new Request.Builder()
+                        .url(mockWebServer.url("foo"))
+                        .build())
+                        .enqueue(new Callback() {
+                            @Override
+                            public void onFailure(Call call, IOException e) {
+                                latch.countDown();
+                            }
+
+                            @Override
+                            public void onResponse(Call call, Response response) {
+                                response.close();
+                                Span activeSpan = mockTracer.activeSpan();
+                                callbackSpans.put(name, activeSpan != null
+                                    ? ((MockSpan) activeSpan).operationName() : "none");
+                                latch.countDown();
+                            }
+                        });
+                }
+                parent.finish();
+            }
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+            Assert.assertEquals("first", callbackSpans.get("first"));
+            Assert.assertEquals("second", callbackSpans.get("second"));
+            Assert.assertNull(mockTracer.activeSpan());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
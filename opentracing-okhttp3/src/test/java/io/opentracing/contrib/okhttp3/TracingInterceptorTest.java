@@ -1,10 +1,32 @@
 package io.opentracing.contrib.okhttp3;
 
-import java.util.concurrent.ExecutionException;
+import io.opentracing.Scope;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import org.junit.Ignore;
+import org.junit.Assert;
+import org.junit.Test;
 
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 
 /**
  * @author Pavol Loffay
@@ -15,8 +37,105 @@ public class TracingInterceptorTest extends AbstractOkHttpTest {
         super(TracingInterceptor.addTracing(new OkHttpClient.Builder(), AbstractOkHttpTest.mockTracer));
     }
 
-    @Ignore("Does not work for interceptors")
-    @Override
-    public void testAsyncMultipleRequests() {
+    @Test
+    public void testClientWithoutEventListener() throws IOException {
+        TracingInterceptor tracingInterceptor = new TracingInterceptor.Builder(mockTracer).build();
+        // the event listener of the interceptor is installed only in the first client
+        TracingInterceptor.addTracing(new OkHttpClient.Builder(), tracingInterceptor, null);
+        OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(tracingInterceptor)
+            .addNetworkInterceptor(tracingInterceptor)
+            .build();
+
+        MockSpan parentSpan = mockTracer.buildSpan("parent").start();
+        try (Scope scope = mockTracer.activateSpan(parentSpan)) {
+            mockWebServer.enqueue(new MockResponse());
+            client.newCall(new Request.Builder()
+                .url(mockWebServer.url("foo"))
+                .build())
+                .execute()
+                .close();
+        }
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        Assert.assertEquals(parentSpan.context().spanId(), mockSpans.get(1).parentId());
+    }
+
+    @Test
+    public void testAsyncParentsUnderLoad() throws InterruptedException {
+        int numberOfCalls = 10000;
+        Logger mockWebServerLogger = Logger.getLogger(MockWebServer.class.getName());
+        Level level = mockWebServerLogger.getLevel();
+        mockWebServerLogger.setLevel(Level.WARNING);
+
+        mockWebServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(200);
+            }
+        });
+
+        final Map<Long, MockSpan> parentSpans = new ConcurrentHashMap<>(numberOfCalls);
+        final CountDownLatch latch = new CountDownLatch(numberOfCalls);
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        try {
+            for (int i = 0; i < numberOfCalls; i++) {
+                final String requestUrl = mockWebServer.url("foo/" + i).toString();
+                executorService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        MockSpan parentSpan = mockTracer.buildSpan(requestUrl)
+                            .ignoreActiveSpan()
+                            .start();
+                        parentSpan.setTag("request-url", requestUrl);
+                        parentSpans.put(parentSpan.context().spanId(), parentSpan);
+
+                        try (Scope scope = mockTracer.activateSpan(parentSpan)) {
+                            client.newCall(new Request.Builder()
+                                .url(requestUrl)
+                                .build())
+                                .enqueue(new Callback() {
+                                    @Override
+                                    public void onFailure(Call call, IOException e) {
+                                        latch.countDown();
+                                    }
+
+                                    @Override
+                                    public void onResponse(Call call, Response response) {
+                                        response.close();
+                                        latch.countDown();
+                                    }
+                                });
+                        }
+                    }
+                });
+            }
+            Assert.assertTrue(latch.await(2, TimeUnit.MINUTES));
+        } finally {
+            executorService.shutdown();
+            mockWebServerLogger.setLevel(level);
+        }
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        assertOnErrors(mockSpans);
+        Assert.assertEquals(numberOfCalls * 2, mockSpans.size());
+
+        Map<Long, MockSpan> spansByIdMap = new HashMap<>(mockSpans.size());
+        for (MockSpan mockSpan: mockSpans) {
+            spansByIdMap.put(mockSpan.context().spanId(), mockSpan);
+        }
+        for (MockSpan networkSpan: mockSpans) {
+            if (networkSpan.tags().containsKey(Tags.COMPONENT.getKey())
+                && !networkSpan.tags().containsKey(Tags.HTTP_URL.getKey())) {
+                continue;
+            }
+
+            MockSpan localSpan = spansByIdMap.get(networkSpan.parentId());
+            MockSpan parentSpan = parentSpans.get(localSpan.parentId());
+            Assert.assertNotNull(parentSpan);
+            Assert.assertEquals(parentSpan.tags().get("request-url"), networkSpan.tags().get(Tags.HTTP_URL.getKey()));
+            Assert.assertEquals(parentSpan.context().traceId(), localSpan.context().traceId());
+        }
     }
 }
@@ -0,0 +1,104 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.SocketPolicy;
+
+public class TracingResponseBodyTest extends AbstractMockWebServerTest {
+
+    private Call.Factory client = new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+        .withSharedClient(true)
+        .withFinishOnResponseBody(true)
+        .build();
+
+    @Test
+    public void testFinishedWhenBodyRead() throws IOException {
+        mockWebServer.enqueue(new MockResponse()
+            .setBody("response body"));
+
+        Response response = client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build())
+            .execute();
+        Assert.assertEquals(0, mockTracer.finishedSpans().size());
+        Assert.assertEquals("response body", response.body().string());
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        AbstractOkHttpTest.assertOnErrors(mockSpans);
+        MockSpan networkSpan = mockSpans.get(0);
+        Assert.assertEquals(13L, networkSpan.tags().get(OkHttpTags.HTTP_RESPONSE_SIZE.getKey()));
+        Assert.assertNotNull(networkSpan.tags().get(OkHttpTags.HTTP_TIME_TO_LAST_BYTE.getKey()));
+        Assert.assertEquals(200, networkSpan.tags().get(Tags.HTTP_STATUS.getKey()));
+        Assert.assertNotNull(mockSpans.get(1).tags().get(Tags.COMPONENT.getKey()));
+    }
+
+    @Test
+    public void testFinishedWhenBodyClosed() throws IOException {
+        mockWebServer.enqueue(new MockResponse()
+            .setBody("response body"));
+
+        Response response = client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build())
+            .execute();
+        Assert.assertEquals(0, mockTracer.finishedSpans().size());
+        response.close();
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        AbstractOkHttpTest.assertOnErrors(mockSpans);
+        Assert.assertEquals(0L, mockSpans.get(0).tags().get(OkHttpTags.HTTP_RESPONSE_SIZE.getKey()));
+    }
+
+    @Test
+    public void testFinishedWhenReadFails() throws IOException {
+        mockWebServer.enqueue(new MockResponse()
+            .setBody("response body")
+            .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+
+        Response response = client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build())
+            .execute();
+        try {
+            response.body().string();
+            Assert.fail();
+        } catch (IOException expected) {
+        }
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        AbstractOkHttpTest.assertOnErrors(mockSpans);
+        Assert.assertEquals(Boolean.TRUE, mockSpans.get(0).tags().get(Tags.ERROR.getKey()));
+        Assert.assertEquals(Boolean.TRUE, mockSpans.get(1).tags().get(Tags.ERROR.getKey()));
+    }
+
+    @Test
+    public void testRedirectFinishesFirstNetworkSpan() throws IOException {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(301).setHeader("Location", "/redirect"));
+        mockWebServer.enqueue(new MockResponse().setBody("after redirect"));
+
+        Response response = client.newCall(new Request.Builder()
+            .url(mockWebServer.url("foo"))
+            .build())
+            .execute();
+        Assert.assertEquals(1, mockTracer.finishedSpans().size());
+        response.body().string();
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(3, mockSpans.size());
+        AbstractOkHttpTest.assertOnErrors(mockSpans);
+    }
+}
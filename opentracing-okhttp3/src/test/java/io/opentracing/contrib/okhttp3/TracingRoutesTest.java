@@ -0,0 +1,68 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+
+public class TracingRoutesTest extends AbstractMockWebServerTest {
+
+    private TracingRoutes routes = new TracingRoutes.Builder()
+        .exclude(null, "/health")
+        .route(null, "/users", Collections.<OkHttpClientSpanDecorator>emptyList(), new UrlTemplateOperationName())
+        .build();
+
+    @Test
+    public void testCallFactory() throws IOException {
+        assertRoutes(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withRoutes(routes)
+            .build());
+    }
+
+    @Test
+    public void testSharedCallFactory() throws IOException {
+        assertRoutes(new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+            .withSharedClient(true)
+            .withRoutes(routes)
+            .build());
+    }
+
+    @Test
+    public void testInterceptor() throws IOException {
+        assertRoutes(TracingInterceptor.addTracing(new OkHttpClient.Builder(),
+            new TracingInterceptor.Builder(mockTracer)
+                .withRoutes(routes)
+                .build(), null));
+    }
+
+    private void assertRoutes(Call.Factory client) throws IOException {
+        for (int i = 0; i < 3; i++) {
+            mockWebServer.enqueue(new MockResponse());
+        }
+        execute(client, "/health/live");
+        Assert.assertEquals(0, mockTracer.finishedSpans().size());
+
+        execute(client, "/users/1");
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        for (MockSpan mockSpan: mockSpans) {
+            Assert.assertEquals("GET /users/{id}", mockSpan.operationName());
+            Assert.assertNull(mockSpan.tags().get(Tags.HTTP_URL.getKey()));
+        }
+        mockTracer.reset();
+
+        execute(client, "/orders/1");
+        mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        Assert.assertEquals("GET", mockSpans.get(0).operationName());
+        Assert.assertNotNull(mockSpans.get(0).tags().get(Tags.HTTP_URL.getKey()));
+    }
+}
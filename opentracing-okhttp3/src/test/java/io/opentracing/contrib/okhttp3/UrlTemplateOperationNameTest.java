@@ -0,0 +1,106 @@
+package io.opentracing.contrib.okhttp3;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class UrlTemplateOperationNameTest {
+
+    private UrlTemplateOperationName operationName = new UrlTemplateOperationName(
+        Arrays.asList("/users/{userId}/orders/{orderId}", "files/{name}"));
+
+    @Test
+    public void testBuiltInSegments() {
+        Assert.assertEquals("/users/{id}", template("http://localhost/users/123"));
+        Assert.assertEquals("/items/{uuid}/details",
+            template("http://localhost/items/123e4567-e89b-12d3-a456-426655440000/details"));
+        Assert.assertEquals("/blobs/{hash}", template("http://localhost/blobs/9f86d081884c7d659a2feaa0c55ad015"));
+        Assert.assertEquals("/users/me/v2", template("http://localhost/users/me/v2"));
+        Assert.assertEquals("/", template("http://localhost/"));
+    }
+
+    @Test
+    public void testConfiguredTemplates() {
+        Assert.assertEquals("/users/{userId}/orders/{orderId}", template("http://localhost/users/john/orders/abc"));
+        Assert.assertEquals("/files/{name}", template("http://localhost/files/readme.txt"));
+        Assert.assertEquals("/files/{id}/{id}", template("http://localhost/files/1/2"));
+    }
+
+    @Test
+    public void testOperationName() {
+        Request request = new Request.Builder()
+            .url("http://localhost/users/123")
+            .post(RequestBody.create(null, new byte[0]))
+            .build();
+        Assert.assertEquals("POST /users/{id}", operationName.operationName(request));
+    }
+
+    @Test
+    public void testOperationNameCached() {
+        String name = operationName.operationName(new Request.Builder()
+            .url("http://localhost/users/123?a=b")
+            .build());
+        Assert.assertEquals("GET /users/{id}", name);
+        // the cached name is returned for the same method, host and path regardless of query and fragment
+        Assert.assertSame(name, operationName.operationName(new Request.Builder()
+            .url("http://localhost/users/123?c=d#top")
+            .build()));
+        Assert.assertEquals("DELETE /users/{id}", operationName.operationName(new Request.Builder()
+            .url("http://localhost/users/123")
+            .delete()
+            .build()));
+        Assert.assertEquals("GET /users/{id}/orders", operationName.operationName(new Request.Builder()
+            .url("http://localhost/users/123/orders")
+            .build()));
+        Assert.assertEquals("/users/{id}", operationName.template(HttpUrl.parse("http://localhost/users/123")));
+    }
+
+    @Test
+    public void testCacheBounded() {
+        UrlTemplateOperationName operationName = new UrlTemplateOperationName(
+            Collections.<String>emptyList(), 32);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("/users/{id}", operationName.template(HttpUrl.parse("http://localhost/users/" + i)));
+        }
+    }
+
+    @Test
+    public void testSpanNames() throws IOException {
+        MockTracer mockTracer = new MockTracer(new ThreadLocalScopeManager(), MockTracer.Propagator.TEXT_MAP);
+        try (MockWebServer mockWebServer = new MockWebServer()) {
+            mockWebServer.enqueue(new MockResponse());
+            new TracingCallFactory.Builder(new OkHttpClient(), mockTracer)
+                .withOperationNameStrategy(operationName)
+                .build()
+                .newCall(new Request.Builder()
+                    .url(mockWebServer.url("/users/7"))
+                    .build())
+                .execute()
+                .close();
+        }
+
+        List<MockSpan> mockSpans = mockTracer.finishedSpans();
+        Assert.assertEquals(2, mockSpans.size());
+        for (MockSpan mockSpan: mockSpans) {
+            Assert.assertEquals("GET /users/{id}", mockSpan.operationName());
+        }
+    }
+
+    private String template(String url) {
+        return operationName.template(HttpUrl.parse(url));
+    }
+}